@@ -19,10 +19,6 @@ import android.util.DisplayMetrics;
 import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -31,6 +27,9 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import android.os.Handler;
 import android.os.Looper;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 public class AboutFragment extends BaseThemedFragment {
 
@@ -164,8 +163,9 @@ public class AboutFragment extends BaseThemedFragment {
     }
     
     private void loadCommits() {
+        OkHttpClient client = LauncherHttpClient.getInstance(requireContext()).client();
         executor.execute(() -> {
-            String result = fetchCommitsFromApi();
+            String result = fetchCommitsFromApi(client);
             mainHandler.post(() -> {
                 if (result != null && isAdded()) {
                     parseAndDisplayCommits(result);
@@ -176,28 +176,17 @@ public class AboutFragment extends BaseThemedFragment {
         });
     }
     
-    private String fetchCommitsFromApi() {
-        try {
-            URL url = new URL(GITHUB_API_URL + "?per_page=5");
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-            
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                reader.close();
-                return response.toString();
+    private String fetchCommitsFromApi(OkHttpClient client) {
+        // Revalidated with the cached ETag, which GitHub does not count against the rate limit
+        Request request = new Request.Builder()
+            .url(GITHUB_API_URL + "?per_page=5")
+            .header("Accept", "application/vnd.github.v3+json")
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.isSuccessful()) {
+                return response.body().string();
             } else {
-                Log.e(TAG, "HTTP Error: " + responseCode);
+                Log.e(TAG, "HTTP Error: " + response.code());
                 return null;
             }
         } catch (Exception e) {
@@ -0,0 +1,425 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+import okhttp3.Response;
+
+/**
+ * Builds a version's APK from another version already on disk plus the parts
+ * of the remote file that differ. The remote central directory is read with
+ * two Range requests; every large entry whose name, method, CRC-32 and sizes
+ * match an entry of the local APK has its compressed bytes copied from there,
+ * and everything else (changed entries, local headers, the signing block, the
+ * directory itself) is fetched with as few Range requests as the gaps allow,
+ * into a .part file of the remote size. The result has the remote layout
+ * byte for byte: each copied entry is checked against the local header the
+ * server sent for it and against its CRC-32, and fetched instead when either
+ * disagrees. Once the file is complete every other entry is checked against
+ * the remote directory too, so a bad range fails the build instead of
+ * producing an APK that only breaks at launch.
+ */
+final class ApkDelta {
+    /**
+     * Copying an entry saves its bytes but splits the fetch around it into
+     * another request; at a few MB/s a mobile round trip is worth about this
+     * much data, so smaller entries come along with their neighbours.
+     */
+    static final long MIN_REUSE = 256 * 1024;
+    /** Changed stretches are not split below this, for the same reason. */
+    private static final long MIN_PIECE_SIZE = 1024 * 1024;
+
+    /** Sizes and CRC after the data, with the optional signature that every APK tool writes. */
+    private static final int DATA_DESCRIPTOR_SIZE = 16;
+    /** Size field and magic that end an APK Signing Block, just before the central directory. */
+    private static final int SIGNING_BLOCK_FOOTER_SIZE = 24;
+    private static final byte[] SIGNING_BLOCK_MAGIC = "APK Sig Block 42".getBytes(StandardCharsets.US_ASCII);
+    private static final long REPORT_INTERVAL_MS = 200;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ApkDownloader downloader;
+    private final String url;
+    private final long total;
+    private final String etag;
+
+    /** The remote central directory and everything after it, which the rebuilt file ends with. */
+    private byte[] directory;
+    private long directoryStart;
+    /** Remote entries in file order. */
+    private List<ApkIndex.Entry> entries;
+    /** Where entry data ends: the signing block if there is one, else the central directory. */
+    private long entriesEnd;
+
+    /** An entry whose compressed bytes are planned to come from the local APK. */
+    private static final class Reuse {
+        final ApkIndex.Entry entry;
+        /** Where the data starts in the remote file. */
+        final long offset;
+        final long baseOffset;
+
+        Reuse(ApkIndex.Entry entry, long offset, long baseOffset) {
+            this.entry = entry;
+            this.offset = offset;
+            this.baseOffset = baseOffset;
+        }
+    }
+
+    ApkDelta(ApkDownloader downloader, String url, long total, String etag) {
+        this.downloader = downloader;
+        this.url = url;
+        this.total = total;
+        this.etag = etag;
+    }
+
+    /**
+     * Fetches the remote end of central directory record and the directory:
+     * one request for the tail the record can be in, and one more when the
+     * directory starts before it.
+     */
+    void readDirectory() throws IOException {
+        long tailStart = Math.max(0, total - (ApkIndex.EOCD_MIN_SIZE + ApkIndex.MAX_COMMENT_SIZE));
+        byte[] tail = fetch(tailStart, total - 1);
+        ApkIndex.DirectoryLocation location = ApkIndex.DirectoryLocation.find(ByteBuffer.wrap(tail), total, url);
+        // The signing block footer comes along, to tell where entry data ends
+        long start = Math.max(0, location.offset - SIGNING_BLOCK_FOOTER_SIZE);
+        if (start < tailStart) {
+            if (total - start > Integer.MAX_VALUE) {
+                throw new ZipException("Central directory too large in " + url);
+            }
+            byte[] head = fetch(start, tailStart - 1);
+            directory = new byte[(int) (total - start)];
+            System.arraycopy(head, 0, directory, 0, head.length);
+            System.arraycopy(tail, 0, directory, head.length, tail.length);
+        } else {
+            directory = tail;
+            start = tailStart;
+        }
+        directoryStart = start;
+
+        ByteBuffer buf = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        buf.position((int) (location.offset - start));
+        buf.limit((int) (location.offset - start + location.size));
+        Map<String, ApkIndex.Entry> parsed = ApkIndex.parseCentralDirectory(buf, location.count, url);
+        entries = new ArrayList<>(parsed.values());
+        Collections.sort(entries, new Comparator<ApkIndex.Entry>() {
+            @Override
+            public int compare(ApkIndex.Entry a, ApkIndex.Entry b) {
+                return Long.compare(a.localHeaderOffset, b.localHeaderOffset);
+            }
+        });
+
+        entriesEnd = location.offset;
+        int footer = (int) (location.offset - start) - SIGNING_BLOCK_FOOTER_SIZE;
+        if (footer >= 0 && matches(directory, footer + 8, SIGNING_BLOCK_MAGIC)) {
+            long blockStart = location.offset - buf.getLong(footer) - 8;
+            if (blockStart >= 0) {
+                entriesEnd = blockStart;
+            }
+        }
+    }
+
+    /** Bytes of the remote file that {@code base} could supply. */
+    long reusableBytes(ApkIndex base) throws IOException {
+        long sum = 0;
+        for (Reuse r : plan(base)) {
+            sum += r.entry.compressedSize;
+        }
+        return sum;
+    }
+
+    /**
+     * Entries worth copying from {@code base}, where their data should start
+     * in the remote file. The local header is not in the central directory,
+     * but without padding between entries the data ends where the next entry
+     * (or the signing block) starts, less the data descriptor if there is one.
+     */
+    private List<Reuse> plan(ApkIndex base) throws IOException {
+        List<Reuse> reuses = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            ApkIndex.Entry e = entries.get(i);
+            if (e.compressedSize < MIN_REUSE) {
+                continue;
+            }
+            ApkIndex.Entry b = base.getEntry(e.name);
+            if (b == null || b.method != e.method || b.crc != e.crc || b.compressedSize != e.compressedSize
+                || b.size != e.size) {
+                continue;
+            }
+            long end = i + 1 < entries.size() ? entries.get(i + 1).localHeaderOffset : entriesEnd;
+            long offset = end - e.compressedSize - (e.hasDataDescriptor ? DATA_DESCRIPTOR_SIZE : 0);
+            long headerEnd = e.localHeaderOffset + ApkIndex.LOC_HEADER_SIZE
+                + e.name.getBytes(StandardCharsets.UTF_8).length;
+            if (offset < headerEnd) {
+                continue;
+            }
+            reuses.add(new Reuse(e, offset, base.dataOffset(b)));
+        }
+        return reuses;
+    }
+
+    /**
+     * Builds the remote file in {@code tmp} from {@code base} and the network
+     * and returns its SHA-256; {@code reused} gets the bytes copied from
+     * {@code base}. {@link #readDirectory} must have been called.
+     */
+    String build(ApkIndex base, File tmp, int connections, ApkDownloader.ProgressListener listener,
+                 AtomicLong reused) throws IOException {
+        List<Reuse> reuses = plan(base);
+        // Everything the copies do not cover, up to the directory that is already here
+        List<long[]> ranges = new ArrayList<>();
+        long next = 0;
+        for (Reuse r : reuses) {
+            if (r.offset > next) {
+                ranges.add(new long[]{next, r.offset - 1});
+            }
+            next = r.offset + r.entry.compressedSize;
+        }
+        if (directoryStart > next) {
+            ranges.add(new long[]{next, directoryStart - 1});
+        }
+
+        listener.onStart(total, etag);
+        AtomicLong written = new AtomicLong(directory.length);
+        // Entries already CRC-checked after their copy
+        Set<String> checked = new HashSet<>();
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(total);
+            ApkDownloader.Preallocator p = downloader.preallocator();
+            if (p != null) {
+                p.preallocate(raf.getFD(), total);
+            }
+            FileChannel channel = raf.getChannel();
+            writeFully(channel, ByteBuffer.wrap(directory), directoryStart);
+            fetchAll(channel, ranges, connections, written, listener);
+
+            // Now that the local headers are here, every planned offset can be checked before copying
+            List<long[]> refetch = new ArrayList<>();
+            try (ApkIndex built = ApkIndex.open(tmp);
+                 RandomAccessFile baseFile = new RandomAccessFile(base.getFile(), "r")) {
+                FileChannel from = baseFile.getChannel();
+                for (Reuse r : reuses) {
+                    downloader.checkCancelled();
+                    ApkIndex.Entry e = built.getEntry(r.entry.name);
+                    // The tail fetched with the directory may already hold the end of the last entry
+                    long end = Math.min(r.offset + r.entry.compressedSize, directoryStart);
+                    if (built.dataOffset(e) != r.offset) {
+                        refetch.add(new long[]{r.offset, end - 1});
+                        continue;
+                    }
+                    long n = 0;
+                    while (r.offset + n < end) {
+                        n += channel.transferFrom(from.position(r.baseOffset + n), r.offset + n, end - r.offset - n);
+                    }
+                    if (!intact(built, e)) {
+                        // Same content, compressed differently: the remote bytes are needed after all
+                        refetch.add(new long[]{r.offset, end - 1});
+                        continue;
+                    }
+                    checked.add(r.entry.name);
+                    reused.addAndGet(r.entry.compressedSize);
+                    listener.onProgress(written.addAndGet(end - r.offset), -1);
+                }
+            }
+            fetchAll(channel, refetch, connections, written, listener);
+            channel.force(false);
+        }
+        verify(tmp, checked);
+        return ApkIntegrity.StreamingDigest.resume(tmp).finish();
+    }
+
+    /**
+     * Checks the built file against the remote central directory: the same
+     * entries, and each one not {@code checked} after its copy inflating to
+     * the size and CRC-32 the directory gives it. A range answered with bytes
+     * of another build, say by a mirror behind the same ETag, surfaces here
+     * as a ZipException, on which the caller downloads the file whole.
+     */
+    private void verify(File tmp, Set<String> checked) throws IOException {
+        try (ApkIndex built = ApkIndex.open(tmp)) {
+            if (built.entries().size() != entries.size()) {
+                throw new ZipException("Rebuilt " + url + " has " + built.entries().size() + " entries, expected "
+                    + entries.size());
+            }
+            for (ApkIndex.Entry e : entries) {
+                if (checked.contains(e.name)) {
+                    continue;
+                }
+                downloader.checkCancelled();
+                ApkIndex.Entry b = built.getEntry(e.name);
+                if (b == null || b.crc != e.crc || b.size != e.size || !intact(built, b)) {
+                    throw new ZipException("Rebuilt " + url + " does not match its central directory at " + e.name);
+                }
+            }
+        }
+    }
+
+    /** Fetches the inclusive {@code {start, end}} ranges over up to {@code connections} connections. */
+    private void fetchAll(final FileChannel channel, List<long[]> ranges, int connections, AtomicLong written,
+                          ApkDownloader.ProgressListener listener) throws IOException {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        ranges = balance(ranges, connections);
+        final AtomicLongArray done = new AtomicLongArray(ranges.size());
+        final AtomicInteger nextRange = new AtomicInteger();
+        final List<long[]> pieces = ranges;
+        int threads = Math.min(connections, ranges.size());
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "delta-" + THREAD_COUNT.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        TransferRate rate = new TransferRate();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    int index;
+                    while ((index = nextRange.getAndIncrement()) < pieces.size()) {
+                        long[] range = pieces.get(index);
+                        downloader.fetchSegment(url, etag, total, channel, range[0], range[1], done, index, null);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        long fetched = sum(done);
+                        rate.update(fetched);
+                        listener.onProgress(written.get() + fetched, rate.bytesPerSecond());
+                    }
+                }
+            }
+            long fetched = sum(done);
+            listener.onProgress(written.addAndGet(fetched), rate.bytesPerSecond());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits ranges bigger than an even share of the bytes, so a changed
+     * stretch much bigger than the rest (the dex files, typically) is fetched
+     * over every connection rather than one.
+     */
+    static List<long[]> balance(List<long[]> ranges, int connections) {
+        long bytes = 0;
+        for (long[] r : ranges) {
+            bytes += r[1] - r[0] + 1;
+        }
+        long share = Math.max(MIN_PIECE_SIZE, (bytes + connections - 1) / connections);
+        List<long[]> pieces = new ArrayList<>();
+        for (long[] r : ranges) {
+            for (long start = r[0]; start <= r[1]; start += share) {
+                pieces.add(new long[]{start, Math.min(r[1], start + share - 1)});
+            }
+        }
+        return pieces;
+    }
+
+    /** One small range, read whole. */
+    private byte[] fetch(long from, long to) throws IOException {
+        downloader.checkCancelled();
+        try (Response response = downloader.open(url, from, to, etag)) {
+            int code = response.code();
+            if (code == HttpURLConnection.HTTP_OK) {
+                throw new ApkDownloader.RangeIgnoredException();
+            }
+            ApkDownloader.checkNotStale(response, total);
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("HTTP " + code);
+            }
+            byte[] bytes = new byte[(int) (to - from + 1)];
+            int n = 0;
+            try (InputStream in = response.body().byteStream()) {
+                int r;
+                while (n < bytes.length && (r = in.read(bytes, n, bytes.length - n)) != -1) {
+                    n += r;
+                }
+            }
+            if (n != bytes.length) {
+                throw new IOException("Range " + from + "-" + to + " ended after " + n + " bytes");
+            }
+            return bytes;
+        }
+    }
+
+    /** Whether the entry's data inflates to its size and CRC-32. */
+    private static boolean intact(ApkIndex index, ApkIndex.Entry entry) {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[65536];
+        long size = 0;
+        try (InputStream in = index.openStream(entry)) {
+            int r;
+            while ((r = in.read(buf)) != -1) {
+                crc.update(buf, 0, r);
+                size += r;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return size == entry.size && crc.getValue() == entry.crc;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private static long sum(AtomicLongArray values) {
+        long sum = 0;
+        for (int i = 0; i < values.length(); i++) {
+            sum += values.get(i);
+        }
+        return sum;
+    }
+
+    private static boolean matches(byte[] bytes, int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
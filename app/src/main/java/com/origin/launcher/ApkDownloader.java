@@ -0,0 +1,800 @@
+package com.origin.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.ZipException;
+
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Downloads a version APK into {@code <apk>.part} and atomically renames it
+ * into place with its {@link ApkIntegrity} record. Once the size is known the
+ * .part file is preallocated to it and written at explicit offsets, split into
+ * segments over parallel connections when the server honours Range requests
+ * (one segment when it does not). Per-segment progress is kept in
+ * {@code <apk>.part.segments} so an interrupted download resumes every
+ * segment where it stopped.
+ * Requests go through the caller's OkHttp client and never into its cache.
+ * Each stream writes in batches sized to the speed it measures.
+ * Given other versions already on disk, a fresh download first tries to
+ * build the APK from the one it shares most with ({@link ApkDelta}).
+ */
+public class ApkDownloader {
+    public static final int DEFAULT_CONNECTIONS = 4;
+    /** Segments smaller than this are not worth another connection. */
+    static final long MIN_SEGMENT_SIZE = 8L * 1024 * 1024;
+
+    /** How often a stream re-measures its speed to resize its write batches. */
+    private static final long SAMPLE_INTERVAL_NS = 100_000_000L;
+    private static final int MAX_RETRIES = 3;
+    /** An APK would only push everything else out of the shared response cache. */
+    private static final CacheControl NO_STORE = new CacheControl.Builder().noStore().build();
+    private static final long REPORT_INTERVAL_MS = 200;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final int connections;
+    private final UrlMetadataCache cache;
+    private final OkHttpClient client;
+    private volatile int fixedBufferSize;
+    private volatile Preallocator preallocator;
+    private volatile List<File> deltaBases = Collections.emptyList();
+    private volatile String expectedSha256;
+    private volatile long reusedBytes;
+    private volatile boolean cancelled;
+
+    /** Reserves disk blocks for the whole file, beyond the sparse length {@code setLength} gives it. */
+    public interface Preallocator {
+        void preallocate(FileDescriptor fd, long length) throws IOException;
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called once the size is known, or with -1 if the server does not say,
+         * along with the ETag if the server sent one.
+         */
+        void onStart(long total, String etag);
+
+        /**
+         * Bytes on disk so far, at most every 200 ms, with the moving average
+         * speed over all connections (-1 until it has been measured).
+         */
+        void onProgress(long downloaded, long bytesPerSecond);
+    }
+
+    /**
+     * With a cache, a download whose URL was probed recently skips the
+     * redirect walk and the probe. The client should speak HTTP/1.1 only, or
+     * the segments end up multiplexed onto one connection.
+     */
+    public ApkDownloader(int connections, UrlMetadataCache cache, OkHttpClient client) {
+        this.connections = Math.max(1, connections);
+        this.cache = cache;
+        this.client = client;
+    }
+
+    /** Writes batches of exactly {@code bytes} instead of sizing them from the measured speed; 0 sizes them again. */
+    public void setFixedBufferSize(int bytes) {
+        fixedBufferSize = Math.max(0, bytes);
+    }
+
+    public void setPreallocator(Preallocator preallocator) {
+        this.preallocator = preallocator;
+    }
+
+    Preallocator preallocator() {
+        return preallocator;
+    }
+
+    /** APKs of other versions whose unchanged entries a fresh download may copy instead of fetching. */
+    public void setDeltaBases(List<File> bases) {
+        deltaBases = new ArrayList<>(bases);
+    }
+
+    /**
+     * The SHA-256 the next download must have, when the source publishes one;
+     * null to rely on the size, ETag and ZIP checks only. A delta build that
+     * does not match is downloaded again whole; a full download that does not
+     * match fails.
+     */
+    public void setExpectedSha256(String sha256) {
+        expectedSha256 = sha256;
+    }
+
+    /** Bytes the last download copied from a delta base rather than fetched. */
+    public long getReusedBytes() {
+        return reusedBytes;
+    }
+
+    /** Stops the download from another thread; {@link #download} then throws {@link CancelledException}. */
+    public void cancel() {
+        cancelled = true;
+        // Unblocks reads that are waiting on the network
+        for (Call call : client.dispatcher().runningCalls()) {
+            if (call.request().tag(ApkDownloader.class) == this) {
+                call.cancel();
+            }
+        }
+    }
+
+    void checkCancelled() throws CancelledException {
+        if (cancelled) {
+            throw new CancelledException();
+        }
+    }
+
+    public static class CancelledException extends IOException {
+        CancelledException() {
+            super("Download cancelled");
+        }
+    }
+
+    /** The final URL is gone or serves something else than the cached metadata describes. */
+    static class StaleMetadataException extends IOException {
+        StaleMetadataException(String message) {
+            super(message);
+        }
+    }
+
+    /** Thrown by a segment whose request came back as a full 200 response. */
+    static class RangeIgnoredException extends IOException {
+        RangeIgnoredException() {
+            super("Server ignored the Range header");
+        }
+    }
+
+    public void download(String url, File outFile, ProgressListener listener) throws IOException {
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        File tmp = new File(outFile.getAbsolutePath() + ".part");
+        File state = new File(tmp.getAbsolutePath() + ".segments");
+        // The old record describes a file that is about to be replaced
+        ApkIntegrity.deleteRecord(outFile);
+
+        UrlMetadataCache.Entry meta = cache != null ? cache.get(url) : null;
+        if (meta != null) {
+            try {
+                download(meta, true, tmp, state, outFile, listener);
+                return;
+            } catch (StaleMetadataException e) {
+                // The cached final URL expired or now serves another file: walk the redirects again
+                cache.remove(url);
+            }
+        }
+        meta = probe(url);
+        if (cache != null) {
+            cache.put(url, meta);
+        }
+        download(meta, false, tmp, state, outFile, listener);
+    }
+
+    /**
+     * What {@link #download} would start from: the cached probe of {@code url}
+     * while it is fresh, otherwise a new one (then cached). Lets the caller
+     * look at the size and ETag before committing to the download.
+     */
+    public UrlMetadataCache.Entry resolve(String url) throws IOException {
+        UrlMetadataCache.Entry meta = cache != null ? cache.get(url) : null;
+        if (meta == null) {
+            meta = probe(url);
+            if (cache != null) {
+                cache.put(url, meta);
+            }
+        }
+        return meta;
+    }
+
+    private void download(UrlMetadataCache.Entry meta, boolean cached, File tmp, File state, File outFile,
+                          ProgressListener listener) throws IOException {
+        if (meta.total > 0) {
+            if (meta.rangesSupported && !tmp.exists() && downloadDelta(meta, tmp, outFile, listener)) {
+                return;
+            }
+            String sha256;
+            try {
+                sha256 = downloadSegmented(meta.finalUrl, tmp, state, meta.total, meta.etag,
+                    meta.rangesSupported ? connections : 1, listener);
+            } catch (RangeIgnoredException e) {
+                state.delete();
+                tmp.delete();
+                if (cached) {
+                    // A full response to If-Range means the file changed since it was cached
+                    throw new StaleMetadataException("ETag " + meta.etag + " no longer matches");
+                }
+                // Some mirror behind the same URL does not do ranges; one segment from the start takes a whole body
+                sha256 = downloadSegmented(meta.finalUrl, tmp, state, meta.total, meta.etag, 1, listener);
+            }
+            checkExpected(tmp, state, sha256);
+            finish(tmp, outFile, sha256);
+            state.delete();
+            return;
+        }
+        if (state.exists()) {
+            // The .part file is preallocated, so its length says nothing about progress
+            state.delete();
+            tmp.delete();
+        }
+        String sha256 = downloadSingle(meta.finalUrl, tmp, meta.etag, listener);
+        checkExpected(tmp, state, sha256);
+        finish(tmp, outFile, sha256);
+    }
+
+    /** Throws, leaving nothing to resume, when {@code sha256} is not the {@link #setExpectedSha256 expected} one. */
+    private void checkExpected(File tmp, File state, String sha256) throws IOException {
+        String expected = expectedSha256;
+        if (expected != null && !expected.equalsIgnoreCase(sha256)) {
+            state.delete();
+            tmp.delete();
+            throw new IOException("Downloaded file has SHA-256 " + sha256 + ", expected " + expected);
+        }
+    }
+
+    /**
+     * Builds the file from the delta base that can supply the most of it.
+     * False, with nothing left behind, when none can or the remote file is
+     * not a ZIP this can read; the caller then downloads it whole.
+     */
+    private boolean downloadDelta(UrlMetadataCache.Entry meta, File tmp, File outFile, ProgressListener listener)
+            throws IOException {
+        reusedBytes = 0;
+        List<File> bases = deltaBases;
+        if (bases.isEmpty()) {
+            return false;
+        }
+        ApkDelta delta = new ApkDelta(this, meta.finalUrl, meta.total, meta.etag);
+        try {
+            delta.readDirectory();
+        } catch (ZipException | RangeIgnoredException e) {
+            return false;
+        }
+        ApkIndex best = null;
+        long bestBytes = 0;
+        try {
+            for (File base : bases) {
+                ApkIndex index;
+                try {
+                    index = ApkIndex.open(base);
+                } catch (IOException e) {
+                    continue;
+                }
+                long bytes;
+                try {
+                    bytes = delta.reusableBytes(index);
+                } catch (ZipException e) {
+                    bytes = 0;
+                }
+                if (bytes > bestBytes) {
+                    if (best != null) {
+                        best.close();
+                    }
+                    best = index;
+                    bestBytes = bytes;
+                } else {
+                    index.close();
+                }
+            }
+            if (best == null) {
+                return false;
+            }
+            AtomicLong reused = new AtomicLong();
+            String sha256;
+            try {
+                sha256 = delta.build(best, tmp, connections, listener, reused);
+            } catch (ZipException | RangeIgnoredException e) {
+                tmp.delete();
+                return false;
+            } catch (IOException | RuntimeException e) {
+                // Nothing of a delta build is worth resuming
+                tmp.delete();
+                throw e;
+            }
+            String expected = expectedSha256;
+            if (expected != null && !expected.equalsIgnoreCase(sha256)) {
+                // Every entry matched the directory, yet the file is not the published one
+                tmp.delete();
+                return false;
+            }
+            finish(tmp, outFile, sha256);
+            reusedBytes = reused.get();
+            return true;
+        } finally {
+            if (best != null) {
+                best.close();
+            }
+        }
+    }
+
+    /** One request for the first byte tells where the redirects end, the size, the ETag and whether ranges work. */
+    private UrlMetadataCache.Entry probe(String url) throws IOException {
+        try (Response response = open(url, 0, 0, null)) {
+            int code = response.code();
+            long total;
+            boolean ranges = false;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                total = parseContentRangeTotal(response.header("Content-Range"));
+                ranges = total > 0;
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                total = response.body().contentLength();
+            } else {
+                throw new IOException("HTTP " + code);
+            }
+            return new UrlMetadataCache.Entry(response.request().url().toString(), total, response.header("ETag"),
+                ranges, System.currentTimeMillis());
+        }
+    }
+
+    /** Returns the SHA-256 of the finished .part file. */
+    private String downloadSegmented(final String url, final File tmp, File stateFile, long total, String etag,
+                                     int maxSegments, ProgressListener listener) throws IOException {
+        long[][] segments = tmp.length() == total ? readState(stateFile, total, etag) : null;
+        if (segments == null) {
+            // Without a state file only a contiguous .part from a download of unknown size can be trusted
+            long written = !stateFile.exists() && tmp.length() < total ? tmp.length() : 0;
+            segments = split(total, written, maxSegments);
+        }
+        final long[] starts = new long[segments.length];
+        final long[] ends = new long[segments.length];
+        final AtomicLongArray done = new AtomicLongArray(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            starts[i] = segments[i][0];
+            ends[i] = segments[i][1];
+            done.set(i, segments[i][2]);
+        }
+        listener.onStart(total, etag);
+        TransferRate rate = new TransferRate();
+        // One segment is written in order, so it can be hashed on the way; several are hashed at the end
+        final ApkIntegrity.StreamingDigest digest = segments.length == 1
+            ? ApkIntegrity.StreamingDigest.resume(tmp, done.get(0)) : null;
+
+        ExecutorService pool = Executors.newFixedThreadPool(segments.length, r -> {
+            Thread t = new Thread(r, "download-" + THREAD_COUNT.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Written before preallocating: a full-size .part without a state file is never trusted
+        writeState(stateFile, total, etag, starts, ends, done);
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            // Preallocate so every segment writes into its own region from the start
+            raf.setLength(total);
+            Preallocator p = preallocator;
+            if (p != null) {
+                p.preallocate(raf.getFD(), total);
+            }
+            final FileChannel channel = raf.getChannel();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < segments.length; i++) {
+                final int index = i;
+                futures.add(pool.submit(() -> {
+                    fetchSegment(url, etag, total, channel, starts[index], ends[index], done, index, digest);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        long sum = writeState(stateFile, total, etag, starts, ends, done);
+                        rate.update(sum);
+                        listener.onProgress(sum, rate.bytesPerSecond());
+                    }
+                }
+            }
+            listener.onProgress(writeState(stateFile, total, etag, starts, ends, done), rate.bytesPerSecond());
+            // On disk before the rename, so a crash cannot leave a renamed APK with holes
+            channel.force(false);
+        } catch (ExecutionException e) {
+            // Progress was saved with the last report; the next attempt continues from there
+            writeState(stateFile, total, etag, starts, ends, done);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return digest != null ? digest.finish() : ApkIntegrity.StreamingDigest.resume(tmp).finish();
+    }
+
+    /**
+     * Fetches {@code [start + done, end]}. A server that ignores Range answers
+     * 200 with the whole file, which only a single segment that has not
+     * started yet can take. {@code digest}, if set, gets every byte written.
+     */
+    void fetchSegment(String url, String etag, long total, FileChannel channel, long start, long end,
+                              AtomicLongArray done, int index, ApkIntegrity.StreamingDigest digest)
+            throws IOException {
+        int attempt = 0;
+        while (start + done.get(index) <= end) {
+            attempt++;
+            checkCancelled();
+            try (Response response = open(url, start + done.get(index), end, etag)) {
+                int code = response.code();
+                if (code == HttpURLConnection.HTTP_OK) {
+                    boolean wholeFile = start == 0 && done.get(index) == 0 && end == total - 1;
+                    if (!wholeFile) {
+                        throw new RangeIgnoredException();
+                    }
+                    long length = response.body().contentLength();
+                    if (length >= 0 && length != total) {
+                        throw new StaleMetadataException("Size changed from " + total + " to " + length);
+                    }
+                } else {
+                    checkNotStale(response, total);
+                    if (code != HttpURLConnection.HTTP_PARTIAL) {
+                        throw new IOException("HTTP " + code);
+                    }
+                }
+                try (InputStream in = response.body().byteStream()) {
+                    byte[] buf = newBuffer();
+                    ByteBuffer wrapped = ByteBuffer.wrap(buf);
+                    TransferRate streamRate = new TransferRate();
+                    long lastSample = 0;
+                    int r;
+                    while (start + done.get(index) <= end
+                        && (r = fill(in, buf, (int) Math.min(buf.length, end + 1 - start - done.get(index)))) != -1) {
+                        checkCancelled();
+                        wrapped.clear().limit(r);
+                        long position = start + done.get(index);
+                        while (wrapped.hasRemaining()) {
+                            position += channel.write(wrapped, position);
+                        }
+                        if (digest != null) {
+                            digest.update(buf, 0, r);
+                        }
+                        long received = done.addAndGet(index, r);
+                        long now = System.nanoTime();
+                        if (now - lastSample >= SAMPLE_INTERVAL_NS) {
+                            lastSample = now;
+                            streamRate.update(received, now);
+                            byte[] next = resizeBuffer(buf, streamRate);
+                            if (next != buf) {
+                                buf = next;
+                                wrapped = ByteBuffer.wrap(buf);
+                            }
+                        }
+                    }
+                }
+                if (start + done.get(index) <= end) {
+                    throw new IOException("Segment " + index + " ended early");
+                }
+            } catch (RangeIgnoredException | StaleMetadataException | CancelledException e) {
+                throw e;
+            } catch (IOException e) {
+                checkCancelled();
+                if (attempt >= MAX_RETRIES) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted", ie);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits {@code [0, total)} into at most {@code maxSegments} inclusive
+     * {@code {start, end, done}} ranges, crediting each with what a
+     * contiguous earlier download already wrote.
+     */
+    static long[][] split(long total, long alreadyWritten, int maxSegments) {
+        int count = (int) Math.max(1, Math.min(maxSegments, total / MIN_SEGMENT_SIZE));
+        long size = total / count;
+        long[][] segments = new long[count][];
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            long end = i == count - 1 ? total - 1 : start + size - 1;
+            long done = Math.max(0, Math.min(alreadyWritten - start, end - start + 1));
+            segments[i] = new long[]{start, end, done};
+        }
+        return segments;
+    }
+
+    /** Null when the state file is missing, unreadable or for a file of another size or ETag. */
+    static long[][] readState(File file, long total, String etag) {
+        if (!file.isFile()) {
+            return null;
+        }
+        List<long[]> segments = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (line == null || !line.equals("total=" + total)) {
+                return null;
+            }
+            line = reader.readLine();
+            if (line == null || !line.equals("etag=" + (etag != null ? etag : ""))) {
+                // The .part holds another build of the file
+                return null;
+            }
+            long expected = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(":");
+                long[] s = {Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+                if (s[0] != expected || s[1] < s[0] || s[2] < 0 || s[2] > s[1] - s[0] + 1) {
+                    return null;
+                }
+                expected = s[1] + 1;
+                segments.add(s);
+            }
+            if (expected != total) {
+                return null;
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return segments.toArray(new long[0][]);
+    }
+
+    /**
+     * Writes {@code total=...}, {@code etag=...} and one {@code start:end:done}
+     * line per segment; returns the bytes done.
+     */
+    private static long writeState(File file, long total, String etag, long[] starts, long[] ends,
+                                   AtomicLongArray done) throws IOException {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        long sum = 0;
+        try (Writer writer = new FileWriter(tmp)) {
+            writer.write("total=" + total + "\n");
+            writer.write("etag=" + (etag != null ? etag : "") + "\n");
+            for (int i = 0; i < starts.length; i++) {
+                long d = done.get(i);
+                sum += d;
+                writer.write(starts[i] + ":" + ends[i] + ":" + d + "\n");
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+        return sum;
+    }
+
+    /**
+     * For a file whose size the probe could not learn, so there is nothing to
+     * preallocate: written in order from where an earlier run stopped. Returns
+     * the SHA-256 of the whole file.
+     */
+    private String downloadSingle(String url, File tmp, String etag, ProgressListener listener) throws IOException {
+        // Hash whatever an earlier run left in the .part file; new bytes are hashed as they are written
+        ApkIntegrity.StreamingDigest digest = ApkIntegrity.StreamingDigest.resume(tmp);
+        TransferRate rate = new TransferRate();
+        int attempt = 0;
+
+        while (attempt < MAX_RETRIES) {
+            attempt++;
+            checkCancelled();
+            if (tmp.length() != digest.length()) {
+                // A failed attempt left a different amount on disk than was hashed
+                digest = ApkIntegrity.StreamingDigest.resume(tmp);
+            }
+            long downloaded = digest.length();
+            try (Response response = open(url, downloaded, -1, etag);
+                 RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                int code = response.code();
+                ResponseBody body = response.body();
+                long contentLength;
+                if (code == HttpURLConnection.HTTP_OK) {
+                    // Range ignored, or If-Range found the file changed: the body is the whole current file
+                    if (downloaded > 0) {
+                        downloaded = 0;
+                        raf.setLength(0);
+                        digest = ApkIntegrity.StreamingDigest.empty();
+                    }
+                    contentLength = body.contentLength();
+                } else {
+                    checkNotStale(response, -1);
+                    if (code != HttpURLConnection.HTTP_PARTIAL) {
+                        throw new IOException("HTTP " + code);
+                    }
+                    contentLength = body.contentLength() >= 0 ? downloaded + body.contentLength() : -1;
+                }
+                listener.onStart(contentLength, etag);
+
+                FileChannel channel = raf.getChannel();
+                byte[] buf = newBuffer();
+                ByteBuffer wrapped = ByteBuffer.wrap(buf);
+                int r;
+                long lastSample = System.nanoTime();
+                long lastReport = lastSample;
+                rate.update(downloaded, lastSample);
+                try (InputStream in = body.byteStream()) {
+                    while ((r = fill(in, buf, buf.length)) != -1) {
+                        checkCancelled();
+                        wrapped.clear().limit(r);
+                        while (wrapped.hasRemaining()) {
+                            downloaded += channel.write(wrapped, downloaded);
+                        }
+                        digest.update(buf, 0, r);
+                        long now = System.nanoTime();
+                        if (now - lastSample >= SAMPLE_INTERVAL_NS) {
+                            lastSample = now;
+                            rate.update(downloaded, now);
+                            byte[] next = resizeBuffer(buf, rate);
+                            if (next != buf) {
+                                buf = next;
+                                wrapped = ByteBuffer.wrap(buf);
+                            }
+                        }
+                        if (now - lastReport >= REPORT_INTERVAL_MS * 1_000_000L) {
+                            lastReport = now;
+                            listener.onProgress(downloaded, rate.bytesPerSecond());
+                        }
+                    }
+                }
+                listener.onProgress(downloaded, rate.bytesPerSecond());
+
+                if (contentLength > 0 && downloaded != contentLength) {
+                    if (downloaded > contentLength) {
+                        // Not the file we asked for; start over on the next attempt
+                        raf.setLength(0);
+                        digest = ApkIntegrity.StreamingDigest.empty();
+                    }
+                    throw new IOException("Download ended at " + downloaded + " of " + contentLength + " bytes");
+                }
+                channel.force(false);
+                return digest.finish();
+            } catch (CancelledException | StaleMetadataException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                checkCancelled();
+                if (attempt >= MAX_RETRIES) {
+                    throw ex;
+                }
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted", ie);
+                }
+            }
+        }
+        throw new IOException("Failed to download after retries");
+    }
+
+    /**
+     * Reads until {@code len} bytes are in {@code buf} or the body ends, so
+     * every write to disk is a whole buffer: OkHttp hands out at most one
+     * 8 KB segment per read. Returns -1 once the body has ended.
+     */
+    private static int fill(InputStream in, byte[] buf, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int r = in.read(buf, n, len - n);
+            if (r == -1) {
+                break;
+            }
+            n += r;
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    private byte[] newBuffer() {
+        int fixed = fixedBufferSize;
+        return new byte[fixed > 0 ? fixed : TransferRate.MIN_BUFFER_SIZE];
+    }
+
+    /**
+     * The buffer to read into next: {@code buf}, unless the stream's speed
+     * calls for one at least twice as big, or a quarter the size or less (so
+     * a speed near a boundary does not reallocate on every sample).
+     */
+    private byte[] resizeBuffer(byte[] buf, TransferRate rate) {
+        if (fixedBufferSize > 0) {
+            return buf;
+        }
+        int wanted = TransferRate.bufferSizeFor(rate.bytesPerSecond());
+        return wanted > buf.length || wanted <= buf.length / 4 ? new byte[wanted] : buf;
+    }
+
+    /**
+     * Renames the finished .part file over the APK in one step. Both live in
+     * the same directory, so the rename cannot cross filesystems; the APK is
+     * never seen half written.
+     */
+    private static void finish(File tmp, File outFile, String sha256) throws IOException {
+        Files.move(tmp.toPath(), outFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        ApkIntegrity.writeRecord(outFile, sha256);
+    }
+
+    /**
+     * A 206 for another total size, or a final URL that has expired or
+     * vanished, means the metadata the request was built from is out of date.
+     */
+    static void checkNotStale(Response response, long total) throws IOException {
+        int code = response.code();
+        if (code == HttpURLConnection.HTTP_FORBIDDEN || code == HttpURLConnection.HTTP_NOT_FOUND
+            || code == HttpURLConnection.HTTP_GONE || code == 416) {
+            throw new StaleMetadataException("HTTP " + code);
+        }
+        if (code == HttpURLConnection.HTTP_PARTIAL && total > 0) {
+            long served = parseContentRangeTotal(response.header("Content-Range"));
+            if (served > 0 && served != total) {
+                throw new StaleMetadataException("Size changed from " + total + " to " + served);
+            }
+        }
+    }
+
+    /**
+     * Requests {@code url} with the Range {@code from-to} (open-ended when
+     * {@code to < 0}, none when both are unset); the client follows redirects
+     * and keeps the Range on every hop. With a strong {@code etag} the range
+     * is conditional (If-Range): a changed file comes back whole as 200
+     * instead of as a mismatched piece.
+     */
+    Response open(String url, long from, long to, String etag) throws IOException {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) {
+            throw new IOException("Not an HTTP URL: " + url);
+        }
+        Request.Builder request = new Request.Builder()
+            .url(parsed)
+            .header("Accept", "*/*")
+            .header("Accept-Encoding", "identity")
+            .cacheControl(NO_STORE)
+            .tag(ApkDownloader.class, this);
+        if (from > 0 || to >= 0) {
+            request.header("Range", "bytes=" + from + "-" + (to >= 0 ? String.valueOf(to) : ""));
+            if (etag != null && !etag.startsWith("W/")) {
+                request.header("If-Range", etag);
+            }
+        }
+        Call call = client.newCall(request.build());
+        if (cancelled) {
+            call.cancel();
+        }
+        return call.execute();
+    }
+
+    /** The total from {@code bytes 0-0/12345}, or -1 if absent or unknown ({@code *}). */
+    static long parseContentRangeTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
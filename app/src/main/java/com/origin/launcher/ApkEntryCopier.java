@@ -0,0 +1,94 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Copies a single APK entry to a file. STORED entries (modern APKs keep native
+ * libraries uncompressed and page-aligned) are copied with
+ * {@link FileChannel#transferTo}, which lets the kernel move the bytes without
+ * them ever passing through a Java buffer. DEFLATED entries are streamed
+ * through an inflater as before.
+ */
+public final class ApkEntryCopier {
+    private static final int STREAM_BUFFER_SIZE = 65536;
+
+    private ApkEntryCopier() {}
+
+    /**
+     * Writes the uncompressed contents of {@code entry} to {@code target} and
+     * returns the number of bytes written. When {@code crc} is non-null and the
+     * entry is streamed, it is updated with the written bytes; the zero-copy
+     * path never sees the bytes and leaves it untouched.
+     */
+    public static long copy(ApkIndex index, ApkIndex.Entry entry, File target, CRC32 crc) throws IOException {
+        if (entry.isStored()) {
+            return transfer(index, entry, target);
+        }
+        return stream(index, entry, target, crc);
+    }
+
+    /** Kernel-side copy of a STORED entry's bytes, straight from the APK. */
+    public static long transfer(ApkIndex index, ApkIndex.Entry entry, File target) throws IOException {
+        if (!entry.isStored()) {
+            throw new IOException(entry.name + " is compressed and cannot be transferred directly");
+        }
+        long offset = index.dataOffset(entry);
+        long remaining = entry.compressedSize;
+        FileChannel source = index.getChannel();
+        try (FileOutputStream out = new FileOutputStream(target);
+             FileChannel sink = out.getChannel()) {
+            long position = offset;
+            while (remaining > 0) {
+                long n = source.transferTo(position, remaining, sink);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of " + entry.name);
+                }
+                position += n;
+                remaining -= n;
+            }
+        }
+        return entry.compressedSize;
+    }
+
+    /** Copies a whole stream, such as a bundled asset, to {@code target} and closes it. */
+    public static long copyStream(InputStream from, File target) throws IOException {
+        File parentDir = target.getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create directories");
+        }
+        long written = 0;
+        try (InputStream in = from;
+             FileOutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+                written += len;
+            }
+        }
+        return written;
+    }
+
+    /** Inflating copy through a heap buffer; works for any compression method. */
+    public static long stream(ApkIndex index, ApkIndex.Entry entry, File target, CRC32 crc) throws IOException {
+        long written = 0;
+        try (InputStream in = index.openStream(entry);
+             FileOutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+                if (crc != null) {
+                    crc.update(buffer, 0, len);
+                }
+                written += len;
+            }
+        }
+        return written;
+    }
+}
@@ -0,0 +1,429 @@
+package com.origin.launcher;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Random-access view of an APK built from a single read of its ZIP central
+ * directory. It answers every question the launch path has about the APK
+ * (dex entries, native libraries per ABI, offsets and compression methods)
+ * and opens entry streams with positional reads, so the file is never
+ * scanned sequentially and several entries can be read concurrently.
+ *
+ * ZIP64 archives are not supported; APKs never need them.
+ */
+public class ApkIndex implements Closeable {
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int LOC_SIG = 0x04034b50;
+    static final int EOCD_MIN_SIZE = 22;
+    private static final int CEN_HEADER_SIZE = 46;
+    static final int LOC_HEADER_SIZE = 30;
+    static final int MAX_COMMENT_SIZE = 0xffff;
+    /** General purpose flag bit 3: sizes and CRC follow the data instead of the local header. */
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    private static final int PAGE_SIZE = 4096;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+    private final long centralDirectoryOffset;
+
+    public static class Entry {
+        public final String name;
+        public final int method;
+        public final long crc;
+        public final long compressedSize;
+        public final long size;
+        public final long localHeaderOffset;
+        /** Whether a data descriptor follows the compressed data. */
+        public final boolean hasDataDescriptor;
+        private volatile long dataOffset = -1;
+
+        Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset,
+              boolean hasDataDescriptor) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.hasDataDescriptor = hasDataDescriptor;
+        }
+
+        public boolean isStored() {
+            return method == METHOD_STORED;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /** File name without its directory, e.g. libminecraftpe.so. */
+        public String simpleName() {
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+    }
+
+    private ApkIndex(File file, RandomAccessFile raf) throws IOException {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.length = channel.size();
+        this.lastModified = file.lastModified();
+
+        if (length < EOCD_MIN_SIZE) {
+            throw new ZipException("Not a ZIP file: " + file);
+        }
+        int tailSize = (int) Math.min(length, EOCD_MIN_SIZE + MAX_COMMENT_SIZE);
+        DirectoryLocation location = DirectoryLocation.find(read(length - tailSize, tailSize), length, file.toString());
+        if (location.size > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory too large in " + file);
+        }
+        this.centralDirectoryOffset = location.offset;
+        this.entries = parseCentralDirectory(read(location.offset, (int) location.size), location.count,
+            file.toString());
+    }
+
+    /** Where the central directory is, according to the end of central directory record. */
+    static final class DirectoryLocation {
+        final int count;
+        final long size;
+        final long offset;
+
+        private DirectoryLocation(int count, long size, long offset) {
+            this.count = count;
+            this.size = size;
+            this.offset = offset;
+        }
+
+        /**
+         * Searches {@code tail}, the last bytes of a ZIP file of {@code length}
+         * bytes (up to {@link #EOCD_MIN_SIZE} + {@link #MAX_COMMENT_SIZE} of
+         * them), for the end of central directory record. {@code source} names
+         * the file in error messages.
+         */
+        static DirectoryLocation find(ByteBuffer tail, long length, String source) throws ZipException {
+            tail = tail.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int tailSize = tail.remaining();
+            int base = tail.position();
+            for (int i = tailSize - EOCD_MIN_SIZE; i >= 0; i--) {
+                if (tail.getInt(base + i) == EOCD_SIG) {
+                    int commentLen = tail.getShort(base + i + 20) & 0xffff;
+                    if (i + EOCD_MIN_SIZE + commentLen == tailSize) {
+                        int count = tail.getShort(base + i + 10) & 0xffff;
+                        long cenSize = tail.getInt(base + i + 12) & 0xffffffffL;
+                        long cenOffset = tail.getInt(base + i + 16) & 0xffffffffL;
+                        if (cenOffset == 0xffffffffL || count == 0xffff) {
+                            throw new ZipException("ZIP64 archives are not supported: " + source);
+                        }
+                        if (cenOffset + cenSize > length) {
+                            throw new ZipException("Truncated central directory in " + source);
+                        }
+                        return new DirectoryLocation(count, cenSize, cenOffset);
+                    }
+                }
+            }
+            throw new ZipException("End of central directory not found (truncated download?): " + source);
+        }
+    }
+
+    public static ApkIndex open(File apk) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(apk, "r");
+        try {
+            return new ApkIndex(apk, raf);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /** Start of the central directory, i.e. the end of the entry data region. */
+    public long getCentralDirectoryOffset() {
+        return centralDirectoryOffset;
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /** classes.dex, classes2.dex, ... classesN.dex in index order, with no upper bound on N. */
+    public List<Entry> dexEntries() {
+        List<Entry> dexes = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            if (dexIndex(e.name) > 0) {
+                dexes.add(e);
+            }
+        }
+        Collections.sort(dexes, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Integer.compare(dexIndex(a.name), dexIndex(b.name));
+            }
+        });
+        return dexes;
+    }
+
+    /** Native libraries directly inside lib/&lt;abi&gt;/, in central directory order. */
+    public List<Entry> nativeLibraries(String abi) {
+        String prefix = "lib/" + abi + "/";
+        List<Entry> libs = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            if (e.name.startsWith(prefix) && !e.isDirectory() && e.name.indexOf('/', prefix.length()) < 0) {
+                libs.add(e);
+            }
+        }
+        return libs;
+    }
+
+    public boolean hasAbi(String abi) {
+        String prefix = "lib/" + abi + "/";
+        for (String name : entries.keySet()) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> abis() {
+        Set<String> abis = new LinkedHashSet<>();
+        for (String name : entries.keySet()) {
+            if (name.startsWith("lib/")) {
+                int slash = name.indexOf('/', 4);
+                if (slash > 4) {
+                    abis.add(name.substring(4, slash));
+                }
+            }
+        }
+        return abis;
+    }
+
+    /**
+     * True when every library in lib/&lt;abi&gt;/ is STORED and starts on a page
+     * boundary, which is what the dynamic linker needs to map it straight out of
+     * the APK through an {@code <apk>!/lib/<abi>} search path.
+     */
+    public boolean nativeLibrariesLoadableInPlace(String abi) throws IOException {
+        List<Entry> libs = nativeLibraries(abi);
+        if (libs.isEmpty()) {
+            return false;
+        }
+        for (Entry lib : libs) {
+            if (!lib.isStored() || dataOffset(lib) % PAGE_SIZE != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Offset of the first byte of the entry's (possibly compressed) data. */
+    public long dataOffset(Entry entry) throws IOException {
+        long offset = entry.dataOffset;
+        if (offset >= 0) {
+            return offset;
+        }
+        ByteBuffer loc = read(entry.localHeaderOffset, LOC_HEADER_SIZE);
+        if (loc.getInt(0) != LOC_SIG) {
+            throw new ZipException("Bad local header for " + entry.name);
+        }
+        int nameLen = loc.getShort(26) & 0xffff;
+        int extraLen = loc.getShort(28) & 0xffff;
+        offset = entry.localHeaderOffset + LOC_HEADER_SIZE + nameLen + extraLen;
+        if (offset + entry.compressedSize > length) {
+            throw new ZipException("Truncated data for " + entry.name);
+        }
+        entry.dataOffset = offset;
+        return offset;
+    }
+
+    /** Opens the uncompressed contents of an entry. Safe to call from several threads. */
+    public InputStream openStream(Entry entry) throws IOException {
+        long offset = dataOffset(entry);
+        switch (entry.method) {
+            case METHOD_STORED:
+                return new RegionInputStream(channel, offset, entry.compressedSize, false);
+            case METHOD_DEFLATED:
+                // nowrap inflaters need one trailing dummy byte after the data
+                InputStream raw = new RegionInputStream(channel, offset, entry.compressedSize, true);
+                return new InflaterInputStream(raw, new Inflater(true), 65536) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                };
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    static int dexIndex(String name) {
+        if (!name.startsWith("classes") || !name.endsWith(".dex") || name.indexOf('/') >= 0) {
+            return -1;
+        }
+        String digits = name.substring("classes".length(), name.length() - ".dex".length());
+        if (digits.isEmpty()) {
+            return 1;
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            if (!Character.isDigit(digits.charAt(i))) return -1;
+        }
+        try {
+            int n = Integer.parseInt(digits);
+            return n >= 2 ? n : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Parses {@code count} central directory headers from {@code cen}, which holds exactly the directory. */
+    static Map<String, Entry> parseCentralDirectory(ByteBuffer cen, int count, String source) throws ZipException {
+        cen = cen.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int size = cen.remaining();
+        Map<String, Entry> result = new LinkedHashMap<>(count * 2);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CEN_HEADER_SIZE > size || cen.getInt(pos) != CEN_SIG) {
+                throw new ZipException("Corrupt central directory in " + source);
+            }
+            int flags = cen.getShort(pos + 8) & 0xffff;
+            int method = cen.getShort(pos + 10) & 0xffff;
+            long crc = cen.getInt(pos + 16) & 0xffffffffL;
+            long compressedSize = cen.getInt(pos + 20) & 0xffffffffL;
+            long uncompressedSize = cen.getInt(pos + 24) & 0xffffffffL;
+            int nameLen = cen.getShort(pos + 28) & 0xffff;
+            int extraLen = cen.getShort(pos + 30) & 0xffff;
+            int commentLen = cen.getShort(pos + 32) & 0xffff;
+            long localOffset = cen.getInt(pos + 42) & 0xffffffffL;
+            if (pos + CEN_HEADER_SIZE + nameLen > size) {
+                throw new ZipException("Corrupt central directory in " + source);
+            }
+            byte[] nameBytes = new byte[nameLen];
+            ByteBuffer nameView = cen.duplicate();
+            nameView.position(pos + CEN_HEADER_SIZE);
+            nameView.get(nameBytes);
+            String name = new String(nameBytes, UTF_8);
+            result.put(name, new Entry(name, method, crc, compressedSize, uncompressedSize, localOffset,
+                (flags & FLAG_DATA_DESCRIPTOR) != 0));
+            pos += CEN_HEADER_SIZE + nameLen + extraLen + commentLen;
+        }
+        return result;
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new EOFException("Unexpected end of " + file);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Reads a byte range of the file through positional channel reads, optionally
+     * followed by the single zero byte that nowrap inflaters expect after the data.
+     */
+    private static class RegionInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        private boolean padded;
+
+        RegionInputStream(FileChannel channel, long position, long length, boolean pad) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.padded = !pad;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                if (padded) {
+                    return -1;
+                }
+                padded = true;
+                b[off] = 0;
+                return 1;
+            }
+            int toRead = (int) Math.min(len, remaining);
+            int n = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of entry data");
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.origin.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of a downloaded APK, computed while it is written, and the small
+ * sidecar record ({@code <apk>.sha256}: size, mtime and digest) that lets the
+ * launch path trust the file without hashing it again. A file whose size no
+ * longer matches its record was truncated or overwritten and must not be staged.
+ */
+public final class ApkIntegrity {
+    public static final String RECORD_SUFFIX = ".sha256";
+
+    public enum Status {
+        /** Size and mtime match the record written when the download completed. */
+        VERIFIED,
+        /** No record: copied in by hand or downloaded before records existed. */
+        UNVERIFIED,
+        /** The file no longer has the size or content it was downloaded with. */
+        CORRUPT
+    }
+
+    private ApkIntegrity() {
+    }
+
+    /**
+     * Digest of a file that is being appended to. {@link #resume} hashes what a
+     * previous attempt already wrote to the {@code .part} file, so a resumed
+     * download ends with the digest of the whole file.
+     */
+    public static final class StreamingDigest {
+        private final MessageDigest digest;
+        private long length;
+
+        private StreamingDigest() {
+            digest = newSha256();
+        }
+
+        public static StreamingDigest empty() {
+            return new StreamingDigest();
+        }
+
+        /** Hashes the current contents of {@code part}, or starts empty if it does not exist. */
+        public static StreamingDigest resume(File part) throws IOException {
+            return resume(part, Long.MAX_VALUE);
+        }
+
+        /** Hashes the first {@code length} bytes of {@code part}, e.g. the written prefix of a preallocated file. */
+        public static StreamingDigest resume(File part, long length) throws IOException {
+            StreamingDigest d = new StreamingDigest();
+            if (part.isFile()) {
+                try (InputStream in = new FileInputStream(part)) {
+                    byte[] buf = new byte[131072];
+                    int r;
+                    while (d.length < length && (r = in.read(buf, 0, (int) Math.min(buf.length, length - d.length))) != -1) {
+                        d.update(buf, 0, r);
+                    }
+                }
+            }
+            return d;
+        }
+
+        public void update(byte[] buf, int off, int len) {
+            digest.update(buf, off, len);
+            length += len;
+        }
+
+        /** Number of bytes hashed so far. */
+        public long length() {
+            return length;
+        }
+
+        /**
+         * Lower-case hex digest. Resets the digest, so {@link #length} becomes
+         * -1 and no longer matches any file: resume again before appending.
+         */
+        public String finish() {
+            length = -1;
+            return toHex(digest.digest());
+        }
+    }
+
+    public static File recordFile(File apk) {
+        return new File(apk.getAbsolutePath() + RECORD_SUFFIX);
+    }
+
+    /** Writes the record for a completed download. Call after the final rename, which keeps the mtime. */
+    public static void writeRecord(File apk, String sha256) throws IOException {
+        File record = recordFile(apk);
+        File tmp = new File(record.getAbsolutePath() + ".tmp");
+        try (Writer writer = new FileWriter(tmp)) {
+            writer.write("size=" + apk.length() + "\n");
+            writer.write("mtime=" + apk.lastModified() + "\n");
+            writer.write("sha256=" + sha256 + "\n");
+        }
+        if (!tmp.renameTo(record)) {
+            tmp.delete();
+            throw new IOException("Failed to write " + record);
+        }
+    }
+
+    public static void deleteRecord(File apk) {
+        recordFile(apk).delete();
+    }
+
+    /**
+     * Checks {@code apk} against its record. Only a changed mtime with an
+     * unchanged size costs a full hash (the file was touched, e.g. restored
+     * from a backup); the record is refreshed when the content still matches.
+     */
+    public static Status check(File apk) throws IOException {
+        Record record = Record.read(apk);
+        Status quick = quickCheck(apk, record);
+        if (quick != null) {
+            return quick;
+        }
+        if (!record.sha256.equals(StreamingDigest.resume(apk).finish())) {
+            return Status.CORRUPT;
+        }
+        writeRecord(apk, record.sha256);
+        return Status.VERIFIED;
+    }
+
+    /** The SHA-256 the record holds, if {@code apk} still matches it without hashing; otherwise null. */
+    public static String recordedSha256(File apk) {
+        try {
+            Record record = Record.read(apk);
+            return quickCheck(apk, record) == Status.VERIFIED ? record.sha256 : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Like {@link #check} but never hashes, for the UI thread: a touched file counts as unverified. */
+    public static Status quickCheck(File apk) {
+        try {
+            Status quick = quickCheck(apk, Record.read(apk));
+            return quick != null ? quick : Status.UNVERIFIED;
+        } catch (IOException e) {
+            return Status.UNVERIFIED;
+        }
+    }
+
+    /** Null when only hashing can tell. */
+    private static Status quickCheck(File apk, Record record) {
+        if (record == null) {
+            return Status.UNVERIFIED;
+        }
+        if (!apk.isFile() || apk.length() != record.size) {
+            return Status.CORRUPT;
+        }
+        return apk.lastModified() == record.mtime ? Status.VERIFIED : null;
+    }
+
+    private static final class Record {
+        long size = -1;
+        long mtime = -1;
+        String sha256;
+
+        /** Null when there is no record or it is damaged; a damaged record says nothing about the APK. */
+        static Record read(File apk) throws IOException {
+            File file = recordFile(apk);
+            if (!file.isFile()) {
+                return null;
+            }
+            Record record = new Record();
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int eq = line.indexOf('=');
+                    if (eq <= 0) {
+                        continue;
+                    }
+                    String key = line.substring(0, eq);
+                    String value = line.substring(eq + 1);
+                    try {
+                        if (key.equals("size")) {
+                            record.size = Long.parseLong(value);
+                        } else if (key.equals("mtime")) {
+                            record.mtime = Long.parseLong(value);
+                        } else if (key.equals("sha256")) {
+                            record.sha256 = value;
+                        }
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+            return record.size >= 0 && record.sha256 != null ? record : null;
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java and Android runtime is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,194 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stages everything a Minecraft APK needs before launch (dex files and, when
+ * required, native libraries) into a directory of its own under
+ * {@code stagingRoot}, keyed by the APK identity. Used both by the launch
+ * path and by background pre-staging; staging runs are serialised so the two
+ * never write into the same directory at once, and whichever comes second
+ * simply finds everything already staged. Directories of other versions are
+ * kept side by side, so switching back is instant, until the
+ * {@link StagingStore} budget evicts the least recently used ones.
+ * Directories staged for a launch stay pinned until the process exits: their
+ * paths are registered on the class loader and must outlive any later
+ * pre-staging run that evicts.
+ * Native libraries are only loaded in place from APKs in the directory set
+ * with {@link #setInPlaceDir}; from anywhere else they are extracted.
+ */
+public class ApkStager {
+    private static final Object STAGING_LOCK = new Object();
+    // Guarded by STAGING_LOCK
+    private static final Set<String> LAUNCH_PINS = new HashSet<>();
+
+    private final File stagingRoot;
+    private final String abi;
+    private final StagingEngine engine;
+    private final StagingStore store;
+    private volatile File inPlaceDir;
+
+    public ApkStager(File stagingRoot, String abi, StagingEngine engine) {
+        this(stagingRoot, abi, engine, null);
+    }
+
+    public ApkStager(File stagingRoot, String abi, StagingEngine engine, StagingStore store) {
+        this.stagingRoot = stagingRoot;
+        this.abi = abi;
+        this.engine = engine;
+        this.store = store;
+    }
+
+    /**
+     * Lets libraries be mapped straight out of APKs in {@code dir}, the
+     * installed package's code directory under /data/app; null (the default)
+     * extracts them for every APK. The linker refuses {@code <apk>!/lib/<abi>}
+     * paths anywhere else: downloaded versions live in app-specific external
+     * storage, which is mounted noexec and is not a permitted path of the
+     * app's linker namespace.
+     */
+    public void setInPlaceDir(File dir) {
+        inPlaceDir = dir;
+    }
+
+    public static class Staged {
+        public final DexStagingCache.Result dex;
+        /** Null unless libraries were extracted into {@link #nativeLibraryPath}. */
+        public final NativeLibExtractor.Result libs;
+        /** Directory or {@code <apk>!/lib/<abi>} path to register, or null to keep the installed one. */
+        public final String nativeLibraryPath;
+        public final boolean libsInApk;
+        /** Keys of other versions' directories evicted to stay within the budget. */
+        public final List<String> evicted;
+
+        Staged(DexStagingCache.Result dex, NativeLibExtractor.Result libs, String nativeLibraryPath, boolean libsInApk,
+               List<String> evicted) {
+            this.dex = dex;
+            this.libs = libs;
+            this.nativeLibraryPath = nativeLibraryPath;
+            this.libsInApk = libsInApk;
+            this.evicted = evicted;
+        }
+    }
+
+    /** Directory name for an APK: path digest, size and mtime, so a changed file gets a fresh slot. */
+    public static String keyFor(File apk) throws IOException {
+        return pathDigest(apk.getCanonicalPath())
+            + "-" + Long.toHexString(apk.length())
+            + "-" + Long.toHexString(apk.lastModified());
+    }
+
+    /** First 128 bits of the path's SHA-256: unlike String.hashCode, two APKs never share a slot. */
+    private static String pathDigest(String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The APK holding the native libraries for {@code abi}: the matching ABI
+     * split (split_config.arm64_v8a.apk) when the package is split, otherwise
+     * the base APK itself.
+     */
+    public static String findLibsApk(String sourceDir, String[] splitSourceDirs, String abi) {
+        if (splitSourceDirs != null && splitSourceDirs.length > 0) {
+            String splitAbi = abi.replace('-', '_');
+            for (String split : splitSourceDirs) {
+                if (split.contains(splitAbi)) {
+                    return split;
+                }
+            }
+        }
+        return sourceDir;
+    }
+
+    public File dirFor(File apk) throws IOException {
+        return new File(stagingRoot, keyFor(apk));
+    }
+
+    /**
+     * Stages {@code apkIndex}'s dex files and, when {@code extractLibs} is set,
+     * the libraries of {@code libsIndex} (the APK itself or its ABI split).
+     * Libraries that can be mapped from the APK in place are not extracted,
+     * if the APK is in the {@link #setInPlaceDir in-place directory}.
+     */
+    public Staged stage(ApkIndex apkIndex, ApkIndex libsIndex, boolean extractLibs,
+                        StagingEngine.ProgressListener listener) throws IOException {
+        return stage(apkIndex, libsIndex, extractLibs, false, listener);
+    }
+
+    /**
+     * As {@link #stage(ApkIndex, ApkIndex, boolean, StagingEngine.ProgressListener)};
+     * with {@code forLaunch} the directory is pinned before the lock is
+     * released, so no eviction can remove it between staging and registration.
+     */
+    public Staged stage(ApkIndex apkIndex, ApkIndex libsIndex, boolean extractLibs, boolean forLaunch,
+                        StagingEngine.ProgressListener listener) throws IOException {
+        synchronized (STAGING_LOCK) {
+            String key = keyFor(apkIndex.getFile());
+            File dir = new File(stagingRoot, key);
+            DexStagingCache dexCache = new DexStagingCache(new File(dir, "dex"));
+            DexStagingCache.Plan dexPlan = dexCache.plan(apkIndex);
+
+            boolean libsInApk = extractLibs && inPlaceAllowed(libsIndex.getFile())
+                && libsIndex.nativeLibrariesLoadableInPlace(abi);
+            File libDir = new File(dir, "lib");
+            NativeLibExtractor.Plan libsPlan = null;
+            if (extractLibs && !libsInApk) {
+                libsPlan = new NativeLibExtractor(libDir).plan(libsIndex, abi);
+            }
+
+            List<StagingEngine.Plan> plans = new ArrayList<>();
+            plans.add(dexPlan);
+            if (libsPlan != null) {
+                plans.add(libsPlan);
+            }
+            engine.run(plans, listener);
+
+            if (forLaunch) {
+                LAUNCH_PINS.add(key);
+            }
+            List<String> evicted = Collections.emptyList();
+            if (store != null) {
+                store.markUsed(key);
+                List<String> pinned = new ArrayList<>(LAUNCH_PINS);
+                pinned.add(key);
+                evicted = store.evict(pinned.toArray(new String[0]));
+            }
+
+            String nativeLibraryPath = null;
+            if (libsInApk) {
+                nativeLibraryPath = libsIndex.getFile().getAbsolutePath() + "!/lib/" + abi;
+            } else if (libsPlan != null) {
+                nativeLibraryPath = libDir.getAbsolutePath() + "/";
+            }
+            return new Staged(dexPlan.getResult(), libsPlan != null ? libsPlan.getResult() : null,
+                nativeLibraryPath, libsInApk, evicted);
+        }
+    }
+
+    private boolean inPlaceAllowed(File apk) throws IOException {
+        File dir = inPlaceDir;
+        if (dir == null) {
+            return false;
+        }
+        File parent = apk.getCanonicalFile().getParentFile();
+        return parent != null && parent.equals(dir.getCanonicalFile());
+    }
+}
@@ -0,0 +1,192 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the classesN.dex entries of a Minecraft APK staged as read-only files
+ * in a directory, keyed by the APK identity (path, size, mtime) and the
+ * CRC32 of every dex entry. When nothing changed the staged files are reused
+ * as-is and the APK is not inflated at all.
+ */
+public class DexStagingCache {
+    private static final String MANIFEST_NAME = "dex.manifest";
+
+    private final File dir;
+
+    public DexStagingCache(File dir) {
+        this.dir = dir;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Result of a staging run. {@code dexFiles} is in the order the files must be
+     * added to the dex path list.
+     */
+    public static class Result {
+        public final List<File> dexFiles;
+        public final List<String> copied;
+        public final boolean reused;
+
+        Result(List<File> dexFiles, List<String> copied, boolean reused) {
+            this.dexFiles = dexFiles;
+            this.copied = copied;
+            this.reused = reused;
+        }
+    }
+
+    /**
+     * Deletes files in the cache directory that are not owned by the current
+     * manifest, keeping {@code keep} (e.g. the launcher dex) untouched.
+     * Returns the names of the deleted files.
+     */
+    public List<String> prune(String... keep) {
+        List<String> deleted = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return deleted;
+        }
+        StagingManifest manifest = StagingManifest.read(new File(dir, MANIFEST_NAME));
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(MANIFEST_NAME) || contains(keep, name)) {
+                continue;
+            }
+            if (manifest != null && manifest.entries.containsKey(name)) {
+                continue;
+            }
+            if (file.delete()) {
+                deleted.add(name);
+            }
+        }
+        return deleted;
+    }
+
+    /** Stages on the calling thread; see {@link #plan} to run the copies on a {@link StagingEngine}. */
+    public Result stage(ApkIndex index) throws IOException {
+        Plan plan = plan(index);
+        StagingEngine.runSequential(plan);
+        return plan.getResult();
+    }
+
+    /**
+     * Works out which dex entries need copying. The returned plan's tasks may
+     * run concurrently; {@link Plan#getResult()} is available once it is committed.
+     */
+    public Plan plan(ApkIndex index) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        File apk = index.getFile();
+        File manifestFile = new File(dir, MANIFEST_NAME);
+        StagingManifest previous = StagingManifest.read(manifestFile);
+
+        if (previous != null && !previous.entries.isEmpty()
+                && previous.matchesApkIdentity(apk) && previous.filesPresent(dir)) {
+            return new Plan(previous, manifestFile, true);
+        }
+
+        StagingManifest current = new StagingManifest();
+        current.setApkIdentity(apk);
+        Plan plan = new Plan(current, manifestFile, false);
+        // Highest index first, matching the order dex files have always been registered in
+        List<ApkIndex.Entry> dexEntries = index.dexEntries();
+        Collections.reverse(dexEntries);
+        for (ApkIndex.Entry entry : dexEntries) {
+            String dexName = entry.name;
+            StagingManifest.Entry record = new StagingManifest.Entry(entry.crc, entry.size);
+            current.entries.put(dexName, record);
+
+            File staged = new File(dir, dexName);
+            StagingManifest.Entry old = previous != null ? previous.entries.get(dexName) : null;
+            if (record.equals(old) && staged.isFile() && staged.length() == record.size) {
+                continue;
+            }
+            // Invalidate before touching any staged file so a crash mid-copy
+            // never leaves a manifest describing half-written dex files.
+            if (manifestFile.exists() && !manifestFile.delete()) {
+                throw new IOException("Failed to invalidate " + manifestFile);
+            }
+            plan.addCopy(index, entry, staged);
+        }
+        return plan;
+    }
+
+    public class Plan extends StagingEngine.Plan {
+        private final StagingManifest manifest;
+        private final File manifestFile;
+        private final boolean reused;
+        private final List<String> copied = new ArrayList<>();
+        private Result result;
+
+        Plan(StagingManifest manifest, File manifestFile, boolean reused) {
+            this.manifest = manifest;
+            this.manifestFile = manifestFile;
+            this.reused = reused;
+        }
+
+        void addCopy(final ApkIndex index, final ApkIndex.Entry entry, final File staged) {
+            copied.add(entry.name);
+            tasks.add(new StagingEngine.Task(entry.name, entry.size) {
+                @Override
+                protected void run() throws IOException {
+                    copyReadOnly(index, entry, staged);
+                }
+            });
+        }
+
+        @Override
+        protected void commit() throws IOException {
+            if (!reused) {
+                manifest.write(manifestFile);
+            }
+            result = new Result(filesFor(manifest), copied, reused);
+        }
+
+        public Result getResult() {
+            return result;
+        }
+    }
+
+    private List<File> filesFor(StagingManifest manifest) {
+        List<File> files = new ArrayList<>();
+        for (String name : manifest.entries.keySet()) {
+            files.add(new File(dir, name));
+        }
+        return files;
+    }
+
+    private static void copyReadOnly(ApkIndex index, ApkIndex.Entry entry, File to) throws IOException {
+        // Staged dex files are read-only, so they have to be replaced rather than overwritten
+        if (to.exists() && !to.delete()) {
+            throw new IOException("Failed to replace " + to.getName());
+        }
+        File tmp = new File(to.getParentFile(), to.getName() + ".tmp");
+        try {
+            ApkEntryCopier.copy(index, entry, tmp, null);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(to)) {
+            tmp.delete();
+            throw new IOException("Failed to move " + tmp.getName() + " into place");
+        }
+        if (!to.setReadOnly()) {
+            throw new IOException("Failed to set " + to.getName() + " as read-only");
+        }
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String n : names) {
+            if (n.equals(name)) return true;
+        }
+        return false;
+    }
+}
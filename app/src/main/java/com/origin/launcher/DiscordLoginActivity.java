@@ -277,10 +277,7 @@ public class DiscordLoginActivity extends BaseThemedActivity {
     private void validateTokenAndGetUserInfo(String token) {
         // Test the token with Discord Gateway (similar to your friend's validation)
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(10, java.util.concurrent.TimeUnit.SECONDS)
-                .readTimeout(10, java.util.concurrent.TimeUnit.SECONDS)
-                .build();
+            OkHttpClient client = LauncherHttpClient.getInstance(this).client();
                 
             Request request = new Request.Builder()
                 .url("wss://gateway.discord.gg/?v=10&encoding=json")
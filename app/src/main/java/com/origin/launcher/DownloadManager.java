@@ -0,0 +1,460 @@
+package com.origin.launcher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns every version download, independently of the fragment that started it.
+ * Downloads wait in a queue and at most {@link #MAX_CONCURRENT} run at once.
+ * The queue (URL, target, bytes done, size, ETag) is kept in
+ * files/downloads.json, so downloads that were queued or running when the
+ * process died are picked up again on the next start and continue from their
+ * .part files. Finished downloads go into the {@link VersionStore}, and a
+ * version it already holds completes without being downloaded again.
+ * Byte progress goes through the {@link ProgressHub}, which the UI reads once
+ * per frame; observers hear about state changes, on the main thread.
+ */
+public class DownloadManager {
+    private static final String TAG = "DownloadManager";
+    public static final int MAX_CONCURRENT = 2;
+    /** Progress is saved at most this often; state changes are saved at once. */
+    private static final long SAVE_INTERVAL_MS = 1000;
+
+    private static DownloadManager instance;
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /** Immutable snapshot of one download, as handed to observers. */
+    public static class Task {
+        public final String url;
+        public final String title;
+        public final File target;
+        public final State state;
+        public final long downloaded;
+        /** -1 until the server has said. */
+        public final long total;
+        public final String etag;
+        /** Moving average while running, otherwise -1. */
+        public final long bytesPerSecond;
+        public final String error;
+
+        Task(Job job) {
+            this.url = job.url;
+            this.title = job.title;
+            this.target = job.target;
+            this.state = job.state;
+            this.downloaded = job.downloaded();
+            this.total = job.total;
+            this.etag = job.etag;
+            this.bytesPerSecond = job.state == State.RUNNING && job.progress != null ? job.progress.bytesPerSecond() : -1;
+            this.error = job.error;
+        }
+
+        public boolean isActive() {
+            return state == State.QUEUED || state == State.RUNNING;
+        }
+
+        /** Seconds until done at the current speed, or -1 if the size or the speed is not known. */
+        public long etaSeconds() {
+            return total > 0 ? TransferRate.etaSeconds(total - downloaded, bytesPerSecond) : -1;
+        }
+    }
+
+    public interface Observer {
+        /** Every known download, in the order they were queued. */
+        void onDownloadsChanged(List<Task> tasks);
+
+        /** A download completed, failed or was cancelled. */
+        void onDownloadFinished(Task task);
+    }
+
+    /** Mutable state of one download; guarded by the manager, except progress, which its worker writes freely. */
+    private static class Job {
+        final String url;
+        final String title;
+        final File target;
+        State state = State.QUEUED;
+        long downloaded;
+        long total = -1;
+        String etag;
+        String error;
+        ApkDownloader downloader;
+        // Open from queueing until the worker finishes with it
+        ProgressHub.Task progress;
+
+        Job(String url, String title, File target) {
+            this.url = url;
+            this.title = title;
+            this.target = target;
+        }
+
+        long downloaded() {
+            return progress != null ? progress.downloaded() : downloaded;
+        }
+    }
+
+    private final Context context;
+    private final File stateFile;
+    /** Shared by all downloads, so a retry or a re-download skips the redirect walk. */
+    private final UrlMetadataCache metadataCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+    private final ProgressHub progressHub = ProgressHub.getInstance();
+    private final ExecutorService executor;
+
+    // Guarded by this; keyed by target path
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private boolean dispatchScheduled;
+    // Read by workers without the lock to decide whether a save is due
+    private volatile long lastSave;
+
+    private DownloadManager(Context context) {
+        this.context = context;
+        this.stateFile = new File(context.getFilesDir(), "downloads.json");
+        this.metadataCache = new UrlMetadataCache(new File(context.getCacheDir(), "download_metadata.tsv"),
+            UrlMetadataCache.DEFAULT_TTL_MS);
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(MAX_CONCURRENT, r -> {
+            Thread t = new Thread(r, "download-manager-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        restore();
+    }
+
+    public static synchronized DownloadManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new DownloadManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Queues {@code url} for download to {@code target}. A download to the same
+     * target that is still queued or running is returned instead of a second one.
+     */
+    public Task enqueue(String url, String title, File target) {
+        Job job;
+        synchronized (this) {
+            job = jobs.get(target.getAbsolutePath());
+            if (job != null && (job.state == State.QUEUED || job.state == State.RUNNING)) {
+                return new Task(job);
+            }
+            job = new Job(url, title, target);
+            // Re-inserted at the end so the list stays in queue order
+            jobs.remove(target.getAbsolutePath());
+            jobs.put(target.getAbsolutePath(), job);
+            submit(job);
+            save();
+        }
+        scheduleDispatch();
+        return new Task(job);
+    }
+
+    /** Stops a queued or running download and deletes what it has written so far. */
+    public void cancel(File target) {
+        Job job;
+        boolean started;
+        synchronized (this) {
+            job = jobs.get(target.getAbsolutePath());
+            if (job == null || (job.state != State.QUEUED && job.state != State.RUNNING)) {
+                return;
+            }
+            job.state = State.CANCELLED;
+            started = job.downloader != null;
+            if (started) {
+                job.downloader.cancel();
+            } else {
+                closeProgress(job);
+            }
+            save();
+        }
+        if (!started) {
+            // Never started: nothing to clean up
+            notifyFinished(job);
+        }
+        scheduleDispatch();
+    }
+
+    public synchronized List<Task> getTasks() {
+        List<Task> tasks = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            tasks.add(new Task(job));
+        }
+        return tasks;
+    }
+
+    /** Adds an observer and immediately tells it the current downloads. */
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+        scheduleDispatch();
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    /** Caller holds the lock. */
+    private void submit(final Job job) {
+        job.progress = progressHub.open(job.downloaded, job.total);
+        executor.execute(() -> run(job));
+    }
+
+    /** Caller holds the lock. Keeps the last reported bytes once the hub no longer has them. */
+    private void closeProgress(Job job) {
+        if (job.progress != null) {
+            job.downloaded = job.progress.downloaded();
+            progressHub.close(job.progress);
+            job.progress = null;
+        }
+    }
+
+    private void run(final Job job) {
+        final LauncherHttpClient http = LauncherHttpClient.getInstance(context);
+        final ApkDownloader downloader = new ApkDownloader(ApkDownloader.DEFAULT_CONNECTIONS, metadataCache,
+            http.downloadClient());
+        downloader.setPreallocator(DownloadManager::fallocate);
+        final VersionStore store = VersionStore.getInstance(context);
+        synchronized (this) {
+            if (job.state != State.QUEUED) {
+                closeProgress(job);
+                return;
+            }
+            job.state = State.RUNNING;
+            job.downloader = downloader;
+            save();
+        }
+        scheduleDispatch();
+        try {
+            File stored = store.find(job.title, job.url);
+            if (stored == null && ApkIntegrity.quickCheck(job.target) == ApkIntegrity.Status.VERIFIED) {
+                // Finished before the process died, but never taken into the store
+                stored = store.add(job.target, job.title, job.url, job.etag);
+            }
+            if (stored == null) {
+                // The same build may be stored under another title or URL
+                UrlMetadataCache.Entry meta = downloader.resolve(job.url);
+                stored = store.findByEtag(meta.etag, meta.total);
+                if (stored != null) {
+                    store.addAlias(stored, job.title, job.url, meta.etag);
+                }
+            }
+            if (stored != null) {
+                Log.i(TAG, job.title + " is already stored as " + stored.getName() + ", not downloading");
+                complete(job, stored);
+                return;
+            }
+            downloader.setDeltaBases(store.blobs());
+            downloader.download(job.url, job.target, new ApkDownloader.ProgressListener() {
+                @Override
+                public void onStart(long total, String etag) {
+                    synchronized (DownloadManager.this) {
+                        job.total = total;
+                        job.etag = etag;
+                        job.progress.setTotal(total);
+                        save();
+                    }
+                    scheduleDispatch();
+                }
+
+                @Override
+                public void onProgress(long downloaded, long bytesPerSecond) {
+                    // Lock-free on the hot path; the UI picks it up on its next frame
+                    job.progress.update(downloaded, bytesPerSecond);
+                    if (System.currentTimeMillis() - lastSave >= SAVE_INTERVAL_MS) {
+                        synchronized (DownloadManager.this) {
+                            save();
+                        }
+                    }
+                }
+            });
+            if (downloader.getReusedBytes() > 0) {
+                Log.i(TAG, job.title + ": " + downloader.getReusedBytes() / (1024 * 1024) + " MB of "
+                    + job.target.length() / (1024 * 1024) + " MB copied from another version");
+            }
+            complete(job, store.add(job.target, job.title, job.url, job.etag));
+        } catch (Exception e) {
+            boolean cancelled;
+            synchronized (this) {
+                cancelled = job.state == State.CANCELLED;
+                if (!cancelled) {
+                    job.state = State.FAILED;
+                    job.error = e.getMessage() != null ? e.getMessage() : e.toString();
+                    save();
+                }
+            }
+            if (cancelled) {
+                // The .part file would only be resumed by a download the user no longer wants
+                deletePartial(job.target);
+            } else {
+                Log.e(TAG, "Download of " + job.title + " failed", e);
+            }
+        } finally {
+            synchronized (this) {
+                job.downloader = null;
+                closeProgress(job);
+            }
+            http.logMetrics();
+            notifyFinished(job);
+            scheduleDispatch();
+        }
+    }
+
+    private void complete(Job job, File apk) {
+        synchronized (this) {
+            if (job.state != State.RUNNING) {
+                // Cancelled meanwhile; the APK is stored all the same
+                return;
+            }
+            job.state = State.COMPLETED;
+            closeProgress(job);
+            job.downloaded = apk.length();
+            job.total = apk.length();
+            save();
+        }
+        PreStager.getInstance(context).prestage(apk);
+        // Older versions make room for this one once it is safely stored
+        VersionStore.getInstance(context).evictInBackground(apk);
+    }
+
+    /**
+     * setLength alone leaves a sparse file whose blocks are allocated piecemeal
+     * as segments arrive; fallocate reserves them up front, which keeps the APK
+     * in few extents on flash and fails at once when storage is short.
+     */
+    private static void fallocate(FileDescriptor fd, long length) throws IOException {
+        try {
+            Os.posix_fallocate(fd, 0, length);
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.ENOSPC) {
+                throw new IOException("Not enough free storage for this version", e);
+            }
+            // Not supported by this filesystem (e.g. FUSE-backed storage): the sparse file still works
+            Log.d(TAG, "fallocate unavailable: " + e.getMessage());
+        }
+    }
+
+    private static void deletePartial(File target) {
+        File part = new File(target.getAbsolutePath() + ".part");
+        new File(part.getAbsolutePath() + ".segments").delete();
+        part.delete();
+    }
+
+    private void notifyFinished(Job job) {
+        final Task task;
+        synchronized (this) {
+            task = new Task(job);
+        }
+        mainHandler.post(() -> {
+            for (Observer o : observers) {
+                o.onDownloadFinished(task);
+            }
+        });
+    }
+
+    /** Coalesces progress from every running download into one main-thread callback. */
+    private void scheduleDispatch() {
+        synchronized (this) {
+            if (dispatchScheduled) {
+                return;
+            }
+            dispatchScheduled = true;
+        }
+        mainHandler.post(() -> {
+            List<Task> tasks;
+            synchronized (this) {
+                dispatchScheduled = false;
+                tasks = getTasks();
+            }
+            for (Observer o : observers) {
+                o.onDownloadsChanged(tasks);
+            }
+        });
+    }
+
+    /** Loads the saved queue and restarts what was queued or running; finished downloads are dropped. */
+    private synchronized void restore() {
+        if (!stateFile.isFile()) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(new String(Files.readAllBytes(stateFile.toPath()), StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                State state = State.valueOf(o.getString("state"));
+                if (state != State.QUEUED && state != State.RUNNING) {
+                    continue;
+                }
+                Job job = new Job(o.getString("url"), o.getString("title"), new File(o.getString("target")));
+                job.downloaded = o.optLong("downloaded", 0);
+                job.total = o.optLong("total", -1);
+                job.etag = o.optString("etag", null);
+                jobs.put(job.target.getAbsolutePath(), job);
+                Log.d(TAG, "Resuming download of " + job.title + " at " + job.downloaded + " bytes");
+                submit(job);
+            }
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.w(TAG, "Discarding unreadable download queue", e);
+        }
+        save();
+    }
+
+    /** Caller holds the lock. Written through a temp file so a crash never leaves half a queue. */
+    private void save() {
+        lastSave = System.currentTimeMillis();
+        JSONArray array = new JSONArray();
+        try {
+            for (Job job : jobs.values()) {
+                JSONObject o = new JSONObject();
+                o.put("url", job.url);
+                o.put("title", job.title);
+                o.put("target", job.target.getAbsolutePath());
+                o.put("state", job.state.name());
+                o.put("downloaded", job.downloaded());
+                o.put("total", job.total);
+                if (job.etag != null) {
+                    o.put("etag", job.etag);
+                }
+                array.put(o);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to serialise download queue", e);
+            return;
+        }
+        File tmp = new File(stateFile.getAbsolutePath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save download queue", e);
+            return;
+        }
+        if (!tmp.renameTo(stateFile)) {
+            tmp.delete();
+        }
+    }
+}
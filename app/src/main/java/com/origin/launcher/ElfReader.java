@@ -0,0 +1,127 @@
+package com.origin.launcher;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the DT_NEEDED entries of a shared library, for ordering library loads
+ * by their real dependencies. Works on 32- and 64-bit little-endian ELF files
+ * at any offset of a channel, so a library stored uncompressed in an APK can
+ * be read in place.
+ */
+public final class ElfReader {
+    private static final int PT_LOAD = 1;
+    private static final int PT_DYNAMIC = 2;
+    private static final int DT_NULL = 0;
+    private static final int DT_NEEDED = 1;
+    private static final int DT_STRTAB = 5;
+
+    private ElfReader() {}
+
+    /** Sonames this library depends on, e.g. {@code libc++_shared.so}, in declaration order. */
+    public static List<String> neededLibraries(FileChannel channel, long base) throws IOException {
+        ByteBuffer ident = read(channel, base, 64);
+        if (ident.getInt(0) != 0x464c457f) { // "\177ELF" read little-endian
+            throw new IOException("Not an ELF file");
+        }
+        boolean is64 = ident.get(4) == 2;
+        if (ident.get(5) != 1) {
+            throw new IOException("Big-endian ELF is not supported");
+        }
+        long phoff = is64 ? ident.getLong(0x20) : ident.getInt(0x1c) & 0xffffffffL;
+        int phentsize = ident.getShort(is64 ? 0x36 : 0x2a) & 0xffff;
+        int phnum = ident.getShort(is64 ? 0x38 : 0x2c) & 0xffff;
+
+        ByteBuffer phdrs = read(channel, base + phoff, phentsize * phnum);
+        long[][] loads = new long[phnum][];
+        long dynOffset = -1;
+        long dynSize = 0;
+        for (int i = 0; i < phnum; i++) {
+            int p = i * phentsize;
+            int type = phdrs.getInt(p);
+            long offset = is64 ? phdrs.getLong(p + 8) : phdrs.getInt(p + 4) & 0xffffffffL;
+            long vaddr = is64 ? phdrs.getLong(p + 16) : phdrs.getInt(p + 8) & 0xffffffffL;
+            long filesz = is64 ? phdrs.getLong(p + 32) : phdrs.getInt(p + 16) & 0xffffffffL;
+            if (type == PT_LOAD) {
+                loads[i] = new long[]{vaddr, offset, filesz};
+            } else if (type == PT_DYNAMIC) {
+                dynOffset = offset;
+                dynSize = filesz;
+            }
+        }
+        if (dynOffset < 0) {
+            // Statically linked: no dependencies to order
+            return new ArrayList<>();
+        }
+
+        int entSize = is64 ? 16 : 8;
+        ByteBuffer dyn = read(channel, base + dynOffset, (int) dynSize);
+        List<Long> needed = new ArrayList<>();
+        long strtab = -1;
+        for (int p = 0; p + entSize <= dynSize; p += entSize) {
+            long tag = is64 ? dyn.getLong(p) : dyn.getInt(p);
+            long val = is64 ? dyn.getLong(p + 8) : dyn.getInt(p + 4) & 0xffffffffL;
+            if (tag == DT_NULL) {
+                break;
+            } else if (tag == DT_NEEDED) {
+                needed.add(val);
+            } else if (tag == DT_STRTAB) {
+                strtab = val;
+            }
+        }
+        List<String> names = new ArrayList<>(needed.size());
+        if (needed.isEmpty()) {
+            return names;
+        }
+        long strtabOffset = toFileOffset(loads, strtab);
+        for (long nameOffset : needed) {
+            names.add(readString(channel, base + strtabOffset + nameOffset));
+        }
+        return names;
+    }
+
+    private static long toFileOffset(long[][] loads, long vaddr) throws IOException {
+        for (long[] load : loads) {
+            if (load != null && vaddr >= load[0] && vaddr < load[0] + load[2]) {
+                return load[1] + (vaddr - load[0]);
+            }
+        }
+        throw new IOException("DT_STRTAB is outside every loadable segment");
+    }
+
+    private static String readString(FileChannel channel, long position) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        ByteBuffer chunk = ByteBuffer.allocate(64);
+        while (true) {
+            chunk.clear();
+            int n = channel.read(chunk, position);
+            if (n <= 0) {
+                throw new EOFException("Unterminated string in ELF string table");
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = chunk.get(i);
+                if (b == 0) {
+                    return sb.toString();
+                }
+                sb.append((char) b);
+            }
+            position += n;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated ELF file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
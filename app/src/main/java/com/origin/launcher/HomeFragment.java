@@ -1,49 +1,20 @@
 package com.origin.launcher;
 
 import android.content.DialogInterface;
-import org.jetbrains.annotations.NotNull;
-import android.annotation.SuppressLint;
 import android.app.AlertDialog;
-import android.os.Handler;
-import android.os.Looper;
 import android.view.View;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Button;
-import android.widget.EditText;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
 import androidx.core.content.FileProvider;
-
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Build;
-import androidx.fragment.app.Fragment;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
 import java.io.FileWriter;
-import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import android.os.Looper;
 import android.content.res.ColorStateList;
 import android.graphics.Color;
 import com.google.android.material.button.MaterialButton;
@@ -60,6 +31,9 @@ public class HomeFragment extends BaseThemedFragment {
     private Button mbl2_button;
     private Button versions_button;
     private com.google.android.material.button.MaterialButton shareLogsButton;
+    private LaunchPipeline launchPipeline;
+    private TextView launchStats;
+    private ScrollView logScroll;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -69,7 +43,8 @@ public class HomeFragment extends BaseThemedFragment {
         mbl2_button = view.findViewById(R.id.mbl2_load);
         versions_button = view.findViewById(R.id.versions_button);
         shareLogsButton = view.findViewById(R.id.share_logs_button);
-        Handler handler = new Handler(Looper.getMainLooper());
+        launchStats = view.findViewById(R.id.launch_stats);
+        logScroll = view.findViewById(R.id.log_scroll);
         
         // Apply initial theme
         applyInitialTheme(view);
@@ -78,11 +53,10 @@ public class HomeFragment extends BaseThemedFragment {
             @Override
             public void onClick(View v) {
                 mbl2_button.setEnabled(false);
-                listener.setText("Starting Minecraft launcher...");
                 
                 // Get package name from settings
                 String packageName = getPackageNameFromSettings();
-                startLauncher(handler, listener, "launcher_mbl2.dex", packageName);
+                startLauncher(packageName);
             }
         });
         
@@ -121,6 +95,13 @@ public class HomeFragment extends BaseThemedFragment {
         
         // Show current selection status
         updateSelectionStatus();
+        updateLaunchStats();
+
+        // Launch output is rendered from the log sink's tail, at most once per frame
+        LaunchLog.getInstance(requireContext()).setObserver(tail -> {
+            listener.setText(String.join("\n", tail));
+            logScroll.post(() -> logScroll.fullScroll(View.FOCUS_DOWN));
+        });
         
         // Set up share button
         shareLogsButton.setOnClickListener(new View.OnClickListener() {
@@ -167,6 +148,9 @@ public class HomeFragment extends BaseThemedFragment {
                 // Apply theme to log text area
                 if (listener != null) {
                     listener.setTextColor(themeManager.getColor("onSurfaceVariant"));
+                    if (launchStats != null) {
+                        launchStats.setTextColor(themeManager.getColor("onSurfaceVariant"));
+                    }
                     // Set background color for the log text area
                     View logCard = view.findViewById(R.id.logCard);
                     if (logCard instanceof MaterialCardView) {
@@ -205,13 +189,29 @@ public class HomeFragment extends BaseThemedFragment {
     private void updateSelectionStatus() {
         String selectedApkPath = getSelectedApkPath();
         if (selectedApkPath != null && new File(selectedApkPath).exists()) {
-            String fileName = new File(selectedApkPath).getName();
+            // Stored versions are named by their hash; show the title they were downloaded under
+            String title = VersionStore.getInstance(requireContext()).titleOf(new File(selectedApkPath));
+            String fileName = title != null ? title : new File(selectedApkPath).getName();
             listener.setText("Ready to launch Minecraft\nSelected APK: " + fileName);
         } else {
             listener.setText("Ready to launch Minecraft");
         }
     }
 
+    private void updateLaunchStats() {
+        try {
+            java.util.List<LaunchHistory.Record> records = LaunchPipeline.getHistory(requireContext()).read();
+            if (records.isEmpty()) {
+                launchStats.setVisibility(View.GONE);
+            } else {
+                launchStats.setText(LaunchHistory.summarize(records, LaunchPipeline.stageLabels()));
+                launchStats.setVisibility(View.VISIBLE);
+            }
+        } catch (IOException e) {
+            launchStats.setVisibility(View.GONE);
+        }
+    }
+
     private void clearSelectedApk() {
         SharedPreferences prefs = requireContext().getSharedPreferences("selected_apk", 0);
         prefs.edit().remove("apk_path").apply();
@@ -221,13 +221,18 @@ public class HomeFragment extends BaseThemedFragment {
 
     private void shareLogs() {
         try {
-            // Get the current log text
-            String logText = listener.getText().toString();
-            
-            // Create a temporary file
+            // Export the full persisted launch log, not just the tail on screen
             File logFile = new File(requireContext().getCacheDir(), "latestlog.txt");
-            FileWriter writer = new FileWriter(logFile);
-            writer.write(logText);
+            LaunchLog.getInstance(requireContext()).exportTo(logFile);
+            String historyText;
+            try {
+                java.util.List<LaunchHistory.Record> records = LaunchPipeline.getHistory(requireContext()).read();
+                historyText = records.isEmpty() ? "" : "\n\n" + LaunchHistory.dump(records, LaunchPipeline.stageLabels());
+            } catch (IOException e) {
+                historyText = "\n\nLaunch history unavailable: " + e.getMessage();
+            }
+            FileWriter writer = new FileWriter(logFile, true);
+            writer.write(historyText);
             writer.close();
             
             // Create the sharing intent
@@ -255,161 +260,40 @@ public class HomeFragment extends BaseThemedFragment {
         }
     }
 
-    private void startLauncher(Handler handler, TextView listener, String launcherDexName, String mcPackageName) {    
-        Executors.newSingleThreadExecutor().execute(() -> {
-            try {
-                // Check if fragment is still attached
-                if (!isAdded()) {
-                    return;
-                }
-                
-                File cacheDexDir = new File(requireActivity().getCodeCacheDir(), "dex");
-                handleCacheCleaning(cacheDexDir, handler, listener);
-                
-                ApplicationInfo mcInfo = null;
-                String selectedApkPath = getSelectedApkPath();
-                
-                if (selectedApkPath != null && new File(selectedApkPath).exists()) {
-                    // Use selected APK instead of installed one
-                    try {
-                        mcInfo = requireActivity().getPackageManager().getApplicationInfo(mcPackageName, PackageManager.GET_META_DATA);
-                        // Override the sourceDir with our selected APK
-                        mcInfo.sourceDir = selectedApkPath;
-                        handler.post(() -> listener.append("\n-> Using selected APK: " + selectedApkPath));
-                    } catch(Exception e) {
-                        handler.post(() -> alertAndExit("Selected APK not found", "The selected APK file is missing or corrupted"));
-                        return;
-                    }
-                } else {
-                    // Use installed APK as fallback
-                    try {
-                        mcInfo = requireActivity().getPackageManager().getApplicationInfo(mcPackageName, PackageManager.GET_META_DATA);
-                        final ApplicationInfo finalMcInfo = mcInfo;
-                        handler.post(() -> listener.append("\n-> Found Minecraft at: " + finalMcInfo.sourceDir));
-                    } catch(Exception e) {
-                        handler.post(() -> alertAndExit("Minecraft cant be found", "Perhaps you dont have it installed?"));
-                        return;
-                    }
-                }
-                
-                Object pathList = getPathList(requireActivity().getClassLoader());
-                processDexFiles(mcInfo, cacheDexDir, pathList, handler, listener, launcherDexName);
-                if (!processNativeLibraries(mcInfo, pathList, handler, listener)) {
-                    return;
-                };
-                
-                handler.post(() -> listener.append("\n-> Launching Minecraft..."));
-                
-                // Final check before launching
+    private void startLauncher(String mcPackageName) {
+        launchPipeline = new LaunchPipeline(requireActivity(), mcPackageName)
+            .setSelectedApk(getSelectedApkPath());
+        launchPipeline.start(new LaunchPipeline.ListenerAdapter() {
+            @Override
+            public void onLaunched(java.util.Map<LaunchPipeline.Stage, Long> timings) {
                 if (isAdded()) {
-                    launchMinecraft(mcInfo);
-                } else {
-                    handler.post(() -> {
-                        listener.setText("Fragment no longer attached, cannot launch Minecraft");
-                        mbl2_button.setEnabled(true);
-                    });
+                    requireActivity().finish();
                 }
-            } catch (Exception e) {
-                String logMessage = e.getCause() != null ? e.getCause().toString() : e.toString();                
-                handler.post(() -> {
-                    listener.setText("Launching failed: " + logMessage);
-                    mbl2_button.setEnabled(true);
-                });                
             }
-        });    
-    }
 
-    @SuppressLint("SetTextI18n")
-    private void handleCacheCleaning(@NotNull File cacheDexDir, Handler handler, TextView listener) {
-        if (cacheDexDir.exists() && cacheDexDir.isDirectory()) {
-            handler.post(() -> listener.setText("-> " + cacheDexDir.getAbsolutePath() + " not empty, do cleaning"));
-            for (File file : Objects.requireNonNull(cacheDexDir.listFiles())) {
-                if (file.delete()) {
-                    handler.post(() -> listener.append("\n-> " + file.getName() + " deleted"));
+            @Override
+            public void onFailed(LaunchPipeline.Stage stage, Exception error) {
+                if (!isAdded()) {
+                    return;
                 }
+                if (error instanceof LaunchPipeline.LaunchException) {
+                    alertAndExit(((LaunchPipeline.LaunchException) error).title, error.getMessage());
+                    return;
+                }
+                // The failure itself is already in the launch log
+                mbl2_button.setEnabled(true);
             }
-        } else {
-            handler.post(() -> listener.setText("-> " + cacheDexDir.getAbsolutePath() + " is empty, skip cleaning"));
-        }
-    }
-
-    private Object getPathList(@NotNull ClassLoader classLoader) throws Exception {
-        Field pathListField = Objects.requireNonNull(classLoader.getClass().getSuperclass()).getDeclaredField("pathList");
-        pathListField.setAccessible(true);
-        return pathListField.get(classLoader);
-    }
-
-    private void processDexFiles(ApplicationInfo mcInfo, File cacheDexDir, @NotNull Object pathList, @NotNull Handler handler, TextView listener, String launcherDexName) throws Exception {
-        Method addDexPath = pathList.getClass().getDeclaredMethod("addDexPath", String.class, File.class);
-        File launcherDex = new File(cacheDexDir, launcherDexName);
 
-        copyFile(requireActivity().getAssets().open(launcherDexName), launcherDex);
-        handler.post(() -> listener.append("\n-> " + launcherDexName + " copied to " + launcherDex.getAbsolutePath()));
-
-        if (launcherDex.setReadOnly()) {
-            addDexPath.invoke(pathList, launcherDex.getAbsolutePath(), null);
-            handler.post(() -> listener.append("\n-> " + launcherDexName + " added to dex path list"));
-        } else {
-            throw new Exception("Failed to set launcher dex as read-only");
-        }
-        
-        ArrayList<String> copiedDexes = new ArrayList<String>();
-        try (ZipFile zipFile = new ZipFile(mcInfo.sourceDir)) {
-            for (int i = 10; i >= 0; i--) {
-                String dexName = "classes" + (i == 0 ? "" : i) + ".dex";
-                ZipEntry dexFile = zipFile.getEntry(dexName);
-                if (dexFile != null) {
-                    File mcDex = new File(cacheDexDir, dexName);
-                    copyFile(zipFile.getInputStream(dexFile), mcDex);
-                    if (mcDex.setReadOnly()) {
-                        addDexPath.invoke(pathList, mcDex.getAbsolutePath(), null);
-                        copiedDexes.add(dexName);
-                    } else {
-                        handler.post(() -> listener.append("\n-> Warning: Failed to set " + dexName + " as read-only"));
-                    }
+            @Override
+            public void onCancelled(LaunchPipeline.Stage stage) {
+                // Delivered even after cancel(), unlike every other event
+                if (isAdded() && mbl2_button != null) {
+                    mbl2_button.setEnabled(true);
                 }
             }
-        } catch (Throwable th) {
-            handler.post(() -> listener.append("\n-> Warning: Error processing dex files: " + th.getMessage()));
-        }    
-        handler.post(() -> listener.append("\n-> Dex files " + copiedDexes.toString() + " copied and added to dex path list"));        
-    }
-
-    private boolean processNativeLibraries(ApplicationInfo mcInfo, @NotNull Object pathList, @NotNull Handler handler, TextView listener) throws Exception {
-        FileInputStream inStream = new FileInputStream(getApkWithLibs(mcInfo));
-        BufferedInputStream bufInStream = new BufferedInputStream(inStream);
-        ZipInputStream inZipStream = new ZipInputStream(bufInStream);
-        if (!checkLibCompatibility(inZipStream)) {
-            handler.post(() -> alertAndExit("Wrong minecraft architecture", "The minecraft you have installed does not support the same main architecture (" + Build.SUPPORTED_ABIS[0] + ") your device uses, Xelo client cant work with it"));
-            return false;
-        } 		    
-        Method addNativePath = pathList.getClass().getDeclaredMethod("addNativePath", Collection.class);
-        ArrayList<String> libDirList = new ArrayList<>();
-        File libdir = new File(mcInfo.nativeLibraryDir);
-        if (libdir.list() == null || libdir.list().length == 0 
-         || (mcInfo.flags & ApplicationInfo.FLAG_EXTRACT_NATIVE_LIBS) != ApplicationInfo.FLAG_EXTRACT_NATIVE_LIBS) {
-            loadUnextractedLibs(mcInfo);
-            libDirList.add(requireActivity().getCodeCacheDir().getAbsolutePath() + "/");
-        } else {
-            libDirList.add(mcInfo.nativeLibraryDir);
-        }
-        addNativePath.invoke(pathList, libDirList);
-        handler.post(() -> listener.append("\n-> " + mcInfo.nativeLibraryDir + " added to native library directory path"));
-        return true;
+        });
     }
 
-    private static Boolean checkLibCompatibility(ZipInputStream zip) throws Exception{
-         ZipEntry ze = null;
-         String requiredLibDir = "lib/" + Build.SUPPORTED_ABIS[0] + "/";
-         while ((ze = zip.getNextEntry()) != null) {
-             if (ze.getName().startsWith(requiredLibDir)) {
-                 return true;
-             }
-         }
-         zip.close();
-         return false;
-     }
-
      private void alertAndExit(String issue, String description) {
         AlertDialog alertDialog = new AlertDialog.Builder(requireActivity()).create();
         alertDialog.setTitle(issue);
@@ -424,88 +308,6 @@ public class HomeFragment extends BaseThemedFragment {
         alertDialog.show();         
      }
 
-    private void loadUnextractedLibs(ApplicationInfo appInfo) throws Exception {
-        FileInputStream inStream = new FileInputStream(getApkWithLibs(appInfo));
-        BufferedInputStream bufInStream = new BufferedInputStream(inStream);
-        ZipInputStream inZipStream = new ZipInputStream(bufInStream);
-        String zipPath = "lib/" + Build.SUPPORTED_ABIS[0] + "/";
-        String outPath = requireActivity().getCodeCacheDir().getAbsolutePath() + "/";
-        File dir = new File(outPath);
-        dir.mkdir();
-        extractDir(appInfo, inZipStream, zipPath, outPath);
-    }
-
-    public String getApkWithLibs(ApplicationInfo pkg) throws PackageManager.NameNotFoundException {
-        String[] sn=pkg.splitSourceDirs;
-        if (sn != null && sn.length > 0) {
-            String cur_abi = Build.SUPPORTED_ABIS[0].replace('-','_');
-            for(String n:sn){
-                if(n.contains(cur_abi)){
-                    return n;
-                }
-            }
-        }
-        return pkg.sourceDir;
-    }
-
-    private static void extractDir(ApplicationInfo mcInfo, ZipInputStream zip, String zip_folder, String out_folder ) throws Exception{
-        ZipEntry ze = null;
-        while ((ze = zip.getNextEntry()) != null) {
-            if (ze.getName().startsWith(zip_folder) && !ze.getName().contains("c++_shared")) {
-                String strippedName = ze.getName().substring(zip_folder.length());
-                String path = out_folder + "/" + strippedName;
-                OutputStream out = new FileOutputStream(path);
-                BufferedOutputStream outBuf = new BufferedOutputStream(out);
-                byte[] buffer = new byte[9000];
-                int len;
-                while ((len = zip.read(buffer)) != -1) {
-                    outBuf.write(buffer, 0, len);
-                }
-                outBuf.close();
-            }
-        }
-        zip.close();
-    }
-
-    private void launchMinecraft(ApplicationInfo mcInfo) throws ClassNotFoundException {
-        Class<?> launcherClass = requireActivity().getClassLoader().loadClass("com.mojang.minecraftpe.Launcher");
-        
-        // Create a new intent for Minecraft to ensure it launches in a new instance
-        Intent mcActivity = new Intent(requireActivity(), launcherClass);
-        mcActivity.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-        mcActivity.putExtra("MC_SRC", mcInfo.sourceDir);
-
-        if (mcInfo.splitSourceDirs != null) {
-            ArrayList<String> listSrcSplit = new ArrayList<>();
-            Collections.addAll(listSrcSplit, mcInfo.splitSourceDirs);
-            mcActivity.putExtra("MC_SPLIT_SRC", listSrcSplit);
-        }
-        
-        // Add additional flags to ensure proper launch
-        mcActivity.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION);
-        
-        startActivity(mcActivity);
-        requireActivity().finish();
-    }
-
-    private static void copyFile(InputStream from, @NotNull File to) throws IOException {
-        File parentDir = to.getParentFile();
-        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
-            throw new IOException("Failed to create directories");
-        }
-        if (!to.exists() && !to.createNewFile()) {
-            throw new IOException("Failed to create new file");
-        }
-        try (BufferedInputStream input = new BufferedInputStream(from);
-             BufferedOutputStream output = new BufferedOutputStream(Files.newOutputStream(to.toPath()))) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = input.read(buffer)) != -1) {
-                output.write(buffer, 0, bytesRead);
-            }
-        }
-    }
-    
     @Override
     public void onResume() {
         super.onResume();
@@ -517,4 +319,15 @@ public class HomeFragment extends BaseThemedFragment {
         super.onPause();
         DiscordRPCHelper.getInstance().updateIdlePresence();
     }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Nothing is left to report to once the view is gone
+        if (launchPipeline != null) {
+            launchPipeline.cancel();
+            launchPipeline = null;
+        }
+        LaunchLog.getInstance(requireContext()).setObserver(null);
+    }
 }
\ No newline at end of file
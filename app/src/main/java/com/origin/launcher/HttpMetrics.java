@@ -0,0 +1,169 @@
+package com.origin.launcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Response;
+
+/**
+ * Per-host counters for every request made through a client this is installed
+ * on: responses, failures, time from sending a request to its response
+ * headers, body bytes received, and how many requests rode on a pooled
+ * connection instead of opening one. A request that is redirected counts once
+ * for every host it visits.
+ */
+public class HttpMetrics implements EventListener.Factory {
+
+    public static class HostStats {
+        public final String host;
+        public final int responses;
+        public final int failures;
+        public final int cacheHits;
+        /** Responses that reused a pooled connection. */
+        public final int reused;
+        public final long totalLatencyMs;
+        public final long maxLatencyMs;
+        public final long bytesReceived;
+
+        HostStats(String host, Counters c) {
+            this.host = host;
+            this.responses = c.responses;
+            this.failures = c.failures;
+            this.cacheHits = c.cacheHits;
+            this.reused = c.reused;
+            this.totalLatencyMs = c.totalLatencyMs;
+            this.maxLatencyMs = c.maxLatencyMs;
+            this.bytesReceived = c.bytesReceived;
+        }
+
+        public long averageLatencyMs() {
+            return responses > 0 ? totalLatencyMs / responses : 0;
+        }
+
+        public double reuseRate() {
+            return responses > 0 ? (double) reused / responses : 0;
+        }
+
+        @Override
+        public String toString() {
+            return host + ": " + responses + " responses, " + failures + " failed, " + cacheHits + " from cache, "
+                + averageLatencyMs() + " ms avg / " + maxLatencyMs + " ms max, " + bytesReceived / 1024 + " KB, "
+                + Math.round(reuseRate() * 100) + "% reused";
+        }
+    }
+
+    private static class Counters {
+        int responses;
+        int failures;
+        int cacheHits;
+        int reused;
+        long totalLatencyMs;
+        long maxLatencyMs;
+        long bytesReceived;
+    }
+
+    // Guarded by itself; sorted so summaries read the same every time
+    private final Map<String, Counters> hosts = new TreeMap<>();
+
+    @Override
+    public EventListener create(Call call) {
+        return new CallListener(call.request().url().host());
+    }
+
+    /** The counters so far, one entry per host. */
+    public List<HostStats> snapshot() {
+        List<HostStats> stats = new ArrayList<>();
+        synchronized (hosts) {
+            for (Map.Entry<String, Counters> e : hosts.entrySet()) {
+                stats.add(new HostStats(e.getKey(), e.getValue()));
+            }
+        }
+        return stats;
+    }
+
+    private Counters counters(String host) {
+        Counters c = hosts.get(host);
+        if (c == null) {
+            c = new Counters();
+            hosts.put(host, c);
+        }
+        return c;
+    }
+
+    /** One per call; a call's events arrive on one thread at a time. */
+    private class CallListener extends EventListener {
+        private String host;
+        private long hopStartNanos;
+        private boolean connected;
+
+        CallListener(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            hopStartNanos = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connected = true;
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            // Redirects may have moved the call to another host
+            host = connection.route().address().url().host();
+        }
+
+        @Override
+        public void connectionReleased(Call call, Connection connection) {
+            // The next hop of a redirect starts here
+            hopStartNanos = System.nanoTime();
+            connected = false;
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            long latencyMs = (System.nanoTime() - hopStartNanos) / 1_000_000;
+            synchronized (hosts) {
+                Counters c = counters(host);
+                c.responses++;
+                if (!connected) {
+                    c.reused++;
+                }
+                c.totalLatencyMs += latencyMs;
+                c.maxLatencyMs = Math.max(c.maxLatencyMs, latencyMs);
+            }
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            synchronized (hosts) {
+                counters(host).bytesReceived += byteCount;
+            }
+        }
+
+        @Override
+        public void cacheHit(Call call, Response response) {
+            synchronized (hosts) {
+                counters(host).cacheHits++;
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            synchronized (hosts) {
+                counters(host).failures++;
+            }
+        }
+    }
+}
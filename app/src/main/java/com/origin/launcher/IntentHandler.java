@@ -7,6 +7,8 @@ import android.os.Bundle;
 
 public class IntentHandler extends Activity
 {
+	private LaunchPipeline launchPipeline;
+
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
@@ -18,10 +20,25 @@ public class IntentHandler extends Activity
 	void patiencepls(Intent intention) {
 		if (isMcLoaded()) {
 			intention.setClassName(getApplicationContext(), "com.mojang.minecraftpe.Launcher");
-		} else {
-			intention.setClassName(getApplicationContext(), "com.origin.launcher.MainActivity");
+			startActivity(intention);
+			return;
 		}
-		startActivity(intention);
+		// Load Minecraft with the same settings as the Home screen and hand it this intent
+		launchPipeline = LaunchPipeline.fromPreferences(this).setLaunchIntent(intention);
+		launchPipeline.start(new LaunchPipeline.ListenerAdapter() {
+			@Override
+			public void onLaunched(java.util.Map<LaunchPipeline.Stage, Long> timings) {
+				finish();
+			}
+
+			@Override
+			public void onFailed(LaunchPipeline.Stage stage, Exception error) {
+				// Let the user sort it out from the launcher UI
+				intention.setClassName(getApplicationContext(), "com.origin.launcher.MainActivity");
+				startActivity(intention);
+				finish();
+			}
+		});
 	}
 	Boolean isMcLoaded() {
 		try {
@@ -31,4 +48,12 @@ public class IntentHandler extends Activity
 			return false;
 		}
 	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		if (launchPipeline != null && !isFinishing()) {
+			launchPipeline.cancel();
+		}
+	}
 }
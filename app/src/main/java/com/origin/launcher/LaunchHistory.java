@@ -0,0 +1,208 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-phase timings and byte counts of the last launches, kept in a small
+ * fixed-size binary ring buffer so a slowdown after an update can be traced to
+ * the phase that regressed. Layout: a 20-byte header (magic, capacity, phase
+ * count, next slot, record count) followed by {@code capacity} fixed-size
+ * records of timestamp, APK label and {@code elapsedMs, bytes} per phase.
+ * A phase that did not run is stored with a negative time.
+ */
+public class LaunchHistory {
+    public static final int DEFAULT_CAPACITY = 50;
+
+    private static final int MAGIC = 0x584c4831; // "XLH1"
+    private static final int HEADER_SIZE = 20;
+    private static final int LABEL_SIZE = 48;
+
+    private final File file;
+    private final int capacity;
+    private final int phases;
+    private final int recordSize;
+
+    public LaunchHistory(File file, int capacity, int phases) {
+        this.file = file;
+        this.capacity = capacity;
+        this.phases = phases;
+        this.recordSize = 8 + LABEL_SIZE + phases * 12;
+    }
+
+    public static class Record {
+        public final long timestamp;
+        public final String label;
+        public final long[] elapsedMs;
+        public final long[] bytes;
+
+        public Record(long timestamp, String label, long[] elapsedMs, long[] bytes) {
+            this.timestamp = timestamp;
+            this.label = label;
+            this.elapsedMs = elapsedMs;
+            this.bytes = bytes;
+        }
+    }
+
+    /** Appends a launch, overwriting the oldest one once the buffer is full. */
+    public synchronized void append(Record record) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            int next = 0;
+            int count = 0;
+            if (hasValidHeader(raf)) {
+                raf.seek(12);
+                next = raf.readInt();
+                count = raf.readInt();
+            } else {
+                // Missing, corrupt or laid out for another capacity/phase count: start over
+                raf.setLength(0);
+            }
+            byte[] label = new byte[LABEL_SIZE];
+            byte[] encoded = record.label.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(encoded, 0, label, 0, Math.min(encoded.length, LABEL_SIZE));
+
+            // Record first, header second: a crash in between leaves the old history intact
+            raf.seek(HEADER_SIZE + (long) next * recordSize);
+            raf.writeLong(record.timestamp);
+            raf.write(label);
+            for (int i = 0; i < phases; i++) {
+                raf.writeInt((int) record.elapsedMs[i]);
+                raf.writeLong(record.bytes[i]);
+            }
+            raf.seek(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(capacity);
+            raf.writeInt(phases);
+            raf.writeInt((next + 1) % capacity);
+            raf.writeInt(Math.min(count + 1, capacity));
+        }
+    }
+
+    /**
+     * Overwrites one phase time of the most recent launch, for timings that
+     * only become known after the launch was recorded.
+     */
+    public synchronized void updateLatest(int phase, long elapsedMs) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (!hasValidHeader(raf)) {
+                return;
+            }
+            raf.seek(12);
+            int next = raf.readInt();
+            int count = raf.readInt();
+            if (count == 0) {
+                return;
+            }
+            int latest = (next + capacity - 1) % capacity;
+            raf.seek(HEADER_SIZE + (long) latest * recordSize + 8 + LABEL_SIZE + (long) phase * 12);
+            raf.writeInt((int) elapsedMs);
+        }
+    }
+
+    /** Stored launches, oldest first. */
+    public synchronized List<Record> read() throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!file.isFile()) {
+            return records;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (!hasValidHeader(raf)) {
+                return records;
+            }
+            raf.seek(12);
+            int next = raf.readInt();
+            int count = raf.readInt();
+            int first = count < capacity ? 0 : next;
+            byte[] label = new byte[LABEL_SIZE];
+            for (int n = 0; n < count; n++) {
+                raf.seek(HEADER_SIZE + (long) ((first + n) % capacity) * recordSize);
+                long timestamp = raf.readLong();
+                raf.readFully(label);
+                int len = 0;
+                while (len < LABEL_SIZE && label[len] != 0) {
+                    len++;
+                }
+                long[] elapsed = new long[phases];
+                long[] bytes = new long[phases];
+                for (int i = 0; i < phases; i++) {
+                    elapsed[i] = raf.readInt();
+                    bytes[i] = raf.readLong();
+                }
+                records.add(new Record(timestamp, new String(label, 0, len, StandardCharsets.UTF_8), elapsed, bytes));
+            }
+        }
+        return records;
+    }
+
+    private boolean hasValidHeader(RandomAccessFile raf) throws IOException {
+        if (raf.length() < HEADER_SIZE) {
+            return false;
+        }
+        raf.seek(0);
+        if (raf.readInt() != MAGIC || raf.readInt() != capacity || raf.readInt() != phases) {
+            return false;
+        }
+        int next = raf.readInt();
+        int count = raf.readInt();
+        return next >= 0 && next < capacity && count >= 0 && count <= capacity
+            && raf.length() >= HEADER_SIZE + (long) count * recordSize;
+    }
+
+    /** Nearest-rank percentile of a phase's time over the launches that ran it, or -1 if none did. */
+    public static long percentile(List<Record> records, int phase, double p) {
+        long[] values = new long[records.size()];
+        int n = 0;
+        for (Record r : records) {
+            if (r.elapsedMs[phase] >= 0) {
+                values[n++] = r.elapsedMs[phase];
+            }
+        }
+        if (n == 0) {
+            return -1;
+        }
+        Arrays.sort(values, 0, n);
+        int rank = (int) Math.ceil(p * n);
+        return values[Math.max(0, Math.min(n, rank) - 1)];
+    }
+
+    /** One line per phase: p50 and p95 over the stored launches. */
+    public static String summarize(List<Record> records, String[] phaseNames) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Launch times over last ").append(records.size()).append(" (p50 / p95):");
+        for (int i = 0; i < phaseNames.length; i++) {
+            long p50 = percentile(records, i, 0.5);
+            if (p50 < 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.US, "\n%-16s %6d / %6d ms", phaseNames[i], p50, percentile(records, i, 0.95)));
+        }
+        return sb.toString();
+    }
+
+    /** Every stored launch in full, for attaching to shared logs. */
+    public static String dump(List<Record> records, String[] phaseNames) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        StringBuilder sb = new StringBuilder("Launch history (" + records.size() + " launches, oldest first)");
+        for (Record r : records) {
+            sb.append("\n").append(format.format(new Date(r.timestamp))).append("  ").append(r.label);
+            for (int i = 0; i < phaseNames.length; i++) {
+                if (r.elapsedMs[i] < 0) {
+                    continue;
+                }
+                sb.append(String.format(Locale.US, "\n  %-16s %6d ms %10d KB", phaseNames[i], r.elapsedMs[i], r.bytes[i] / 1024));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,191 @@
+package com.origin.launcher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launch log sink. Lines go to a bounded in-memory ring (what the Home screen
+ * shows) and, in batches on a background thread, to a rotating file (what
+ * Share exports). Observers are notified at most once per frame however many
+ * lines arrive, so a burst of staging messages costs one layout pass.
+ */
+public class LaunchLog {
+    private static final int TAIL_LINES = 200;
+    private static final long ROTATE_BYTES = 256 * 1024;
+    private static LaunchLog instance;
+
+    private final File logFile;
+    private final File rotatedFile;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "launch-log");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+
+    // Guarded by this
+    private final ArrayDeque<String> tail = new ArrayDeque<>(TAIL_LINES);
+    private List<String> pendingWrites = new ArrayList<>();
+    // Not pendingWrites.isEmpty(): begin() queues its header before the first line
+    private boolean drainScheduled;
+    private boolean frameScheduled;
+    private Observer observer;
+
+    public interface Observer {
+        /** Called on the main thread with the current tail, oldest line first. */
+        void onLogChanged(List<String> tail);
+    }
+
+    private LaunchLog(Context context) {
+        File dir = new File(context.getFilesDir(), "logs");
+        dir.mkdirs();
+        logFile = new File(dir, "launch.log");
+        rotatedFile = new File(dir, "launch.log.1");
+    }
+
+    public static synchronized LaunchLog getInstance(Context context) {
+        if (instance == null) {
+            instance = new LaunchLog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public synchronized void setObserver(Observer observer) {
+        this.observer = observer;
+    }
+
+    /** Starts a new session: clears the on-screen tail and marks the start in the file. */
+    public void begin(String line) {
+        synchronized (this) {
+            tail.clear();
+            pendingWrites.add("");
+            pendingWrites.add("===== " + timeFormat.format(new Date()) + " =====");
+        }
+        append(line);
+    }
+
+    public void append(String line) {
+        boolean scheduleWrite;
+        boolean scheduleFrame = false;
+        synchronized (this) {
+            if (tail.size() == TAIL_LINES) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+            pendingWrites.add(timeFormat.format(new Date()) + " " + line);
+            scheduleWrite = !drainScheduled;
+            drainScheduled = true;
+            if (observer != null && !frameScheduled) {
+                frameScheduled = true;
+                scheduleFrame = true;
+            }
+        }
+        if (scheduleWrite) {
+            // Lines queued before this task runs are written with it
+            writer.execute(this::drain);
+        }
+        if (scheduleFrame) {
+            // Choreographer is per-looper, so hop to the main thread before asking for a frame
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(frameTimeNanos -> dispatch()));
+        }
+    }
+
+    public synchronized List<String> getTail() {
+        return new ArrayList<>(tail);
+    }
+
+    private void dispatch() {
+        Observer o;
+        List<String> snapshot;
+        synchronized (this) {
+            frameScheduled = false;
+            o = observer;
+            snapshot = new ArrayList<>(tail);
+        }
+        if (o != null) {
+            o.onLogChanged(snapshot);
+        }
+    }
+
+    private void drain() {
+        List<String> lines;
+        synchronized (this) {
+            drainScheduled = false;
+            lines = pendingWrites;
+            pendingWrites = new ArrayList<>();
+        }
+        if (lines.isEmpty()) {
+            return;
+        }
+        try {
+            if (logFile.length() > ROTATE_BYTES) {
+                rotatedFile.delete();
+                logFile.renameTo(rotatedFile);
+            }
+            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(logFile, true), StandardCharsets.UTF_8))) {
+                for (String line : lines) {
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            // Nothing sensible to log a logging failure to; the tail is still on screen
+        }
+    }
+
+    /**
+     * Writes the whole persisted log, older rotation first, to {@code target}.
+     * Waits for lines still queued to reach the file first.
+     */
+    public void exportTo(File target) throws IOException {
+        try {
+            writer.submit(() -> {
+                drain();
+                try (OutputStream out = new FileOutputStream(target)) {
+                    copyInto(rotatedFile, out);
+                    copyInto(logFile, out);
+                }
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Log export failed", cause);
+        }
+    }
+
+    private static void copyInto(File file, OutputStream out) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+        }
+    }
+}
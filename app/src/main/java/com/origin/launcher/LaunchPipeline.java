@@ -0,0 +1,588 @@
+package com.origin.launcher;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads Minecraft into this process and starts its Launcher activity, as a
+ * sequence of named stages run on one shared background thread. Callers
+ * receive typed events (stage started/finished with timings, staged entries,
+ * log messages, the outcome) on the main thread through a {@link Listener};
+ * the same messages are written to the {@link LaunchLog}.
+ *
+ * Cancellation is cooperative: {@link #cancel()} is honoured between stages up
+ * to the point where paths are registered with the class loader, which cannot
+ * be undone; after that the launch always completes. Anything staged before a
+ * cancel stays valid for the next launch.
+ *
+ * STAGE_DEX and STAGE_LIBS run at the same time on the staging pool, so their
+ * timings overlap; each one finishes when its own entries are done.
+ */
+public class LaunchPipeline {
+    public static final String LAUNCHER_DEX_NAME = "launcher_mbl2.dex";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "launch-pipeline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public enum Stage {
+        RESOLVE_APK("Resolve APK"),
+        INDEX("Index APK"),
+        STAGE_DEX("Stage dex"),
+        STAGE_LIBS("Stage libraries"),
+        REGISTER_PATHS("Register paths"),
+        PRELOAD_LIBS("Preload libraries"),
+        LAUNCH("Launch");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    public interface Listener {
+        void onStageStarted(Stage stage);
+
+        void onStageFinished(Stage stage, long elapsedMs, long bytes);
+
+        void onMessage(Stage stage, String message);
+
+        void onEntryStaged(Stage stage, String name, long bytes, int completed, int total);
+
+        /** One of the Launcher's libraries was loaded ahead of time; {@code error} is null on success. */
+        void onLibraryPreloaded(String name, long elapsedMs, Throwable error);
+
+        /** Launcher activity started; {@code timings} holds every stage that ran, in order. */
+        void onLaunched(Map<Stage, Long> timings);
+
+        void onCancelled(Stage stage);
+
+        void onFailed(Stage stage, Exception error);
+    }
+
+    /** Listener with empty callbacks, for callers that only care about the outcome. */
+    public static class ListenerAdapter implements Listener {
+        @Override public void onStageStarted(Stage stage) {}
+        @Override public void onStageFinished(Stage stage, long elapsedMs, long bytes) {}
+        @Override public void onMessage(Stage stage, String message) {}
+        @Override public void onEntryStaged(Stage stage, String name, long bytes, int completed, int total) {}
+        @Override public void onLibraryPreloaded(String name, long elapsedMs, Throwable error) {}
+        @Override public void onLaunched(Map<Stage, Long> timings) {}
+        @Override public void onCancelled(Stage stage) {}
+        @Override public void onFailed(Stage stage, Exception error) {}
+    }
+
+    /** A failure the user can act on, shown as a dialog rather than a log line. */
+    public static class LaunchException extends Exception {
+        public final String title;
+
+        public LaunchException(String title, String message) {
+            super(message);
+            this.title = title;
+        }
+    }
+
+    private static class CancelledException extends Exception {
+    }
+
+    private final Context context;
+    private final String packageName;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LaunchLog log;
+    private final Map<Stage, Long> startTimes = new EnumMap<>(Stage.class);
+    private final Map<Stage, Long> timings = new EnumMap<>(Stage.class);
+    private final Map<Stage, Long> bytes = new EnumMap<>(Stage.class);
+    private String selectedApkPath;
+    /** The installed package's /data/app directory, the only place libraries can be loaded from in place. */
+    private File installedCodeDir;
+    private NativeStartupProfile nativeProfile;
+    private Intent launchIntent;
+    private volatile boolean cancelled;
+    private Listener listener;
+
+    public LaunchPipeline(Context context, String packageName) {
+        this.context = context.getApplicationContext();
+        this.packageName = packageName;
+        this.log = LaunchLog.getInstance(context);
+    }
+
+    /** Launch this standalone APK instead of the installed package's. */
+    public LaunchPipeline setSelectedApk(String path) {
+        this.selectedApkPath = path;
+        return this;
+    }
+
+    /** Intent whose action, data and extras are forwarded to the Launcher activity. */
+    public LaunchPipeline setLaunchIntent(Intent intent) {
+        this.launchIntent = intent;
+        return this;
+    }
+
+    /** Reads the package name and selected APK from the preferences the settings and versions screens write. */
+    public static LaunchPipeline fromPreferences(Context context) {
+        String packageName = context.getSharedPreferences("settings", 0)
+            .getString("mc_package_name", "com.mojang.minecraftpe");
+        String selected = context.getSharedPreferences("selected_apk", 0).getString("apk_path", null);
+        return new LaunchPipeline(context, packageName).setSelectedApk(selected);
+    }
+
+    public void start(Listener listener) {
+        this.listener = listener;
+        log.begin("Starting Minecraft launcher...");
+        EXECUTOR.execute(this::run);
+    }
+
+    /** Stops the launch at the next stage boundary and drops any further events. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Timings of past launches, from either the Home screen or an intent. */
+    public static LaunchHistory getHistory(Context context) {
+        return new LaunchHistory(new File(context.getFilesDir(), "launch_history.bin"),
+            LaunchHistory.DEFAULT_CAPACITY, Stage.values().length + NativeStartupProfile.PHASE_LABELS.length);
+    }
+
+    /** Names of the launch history phases: the stages, then the native startup phases. */
+    public static String[] stageLabels() {
+        Stage[] stages = Stage.values();
+        String[] labels = new String[stages.length + NativeStartupProfile.PHASE_LABELS.length];
+        for (int i = 0; i < stages.length; i++) {
+            labels[i] = stages[i].label;
+        }
+        System.arraycopy(NativeStartupProfile.PHASE_LABELS, 0, labels, stages.length, NativeStartupProfile.PHASE_LABELS.length);
+        return labels;
+    }
+
+    private void run() {
+        Stage stage = Stage.RESOLVE_APK;
+        try {
+            checkCancelled();
+            begin(stage);
+            ApplicationInfo mcInfo = resolveApk();
+            finish(stage);
+
+            stage = Stage.INDEX;
+            begin(stage);
+            // Each APK's central directory is parsed once and shared by all later stages
+            String libsApkPath = getApkWithLibs(mcInfo);
+            ApkIndex apkIndex = ApkIndex.open(new File(mcInfo.sourceDir));
+            ApkIndex libsIndex = apkIndex;
+            try {
+                addBytes(stage, apkIndex.getLength() - apkIndex.getCentralDirectoryOffset());
+                if (!libsApkPath.equals(mcInfo.sourceDir)) {
+                    libsIndex = ApkIndex.open(new File(libsApkPath));
+                    addBytes(stage, libsIndex.getLength() - libsIndex.getCentralDirectoryOffset());
+                }
+                if (!libsIndex.hasAbi(Build.SUPPORTED_ABIS[0])) {
+                    throw new LaunchException("Wrong minecraft architecture", "The minecraft you have installed does not support the same main architecture (" + Build.SUPPORTED_ABIS[0] + ") your device uses, Xelo client cant work with it");
+                }
+                finish(stage);
+
+                stage = Stage.STAGE_DEX;
+                boolean extractLibs = selectedApkPath != null || needsLibExtraction(mcInfo);
+                // Usually a no-op: the APK was pre-staged when it was selected or downloaded
+                ApkStager.Staged staged = stageApk(apkIndex, libsIndex, extractLibs);
+
+                stage = Stage.REGISTER_PATHS;
+                begin(stage);
+                Object pathList = getPathList(context.getClassLoader());
+                registerDexFiles(staged.dex, pathList);
+                registerNativeLibraries(mcInfo, staged, pathList);
+                // Paths are registered now, so the launch goes ahead even if cancelled meanwhile
+                finishQuietly(stage);
+
+                stage = Stage.PRELOAD_LIBS;
+                begin(stage);
+                // Not waited for here: the launch is prepared while the libraries load
+                CompletableFuture<Map<String, Throwable>> preload = startPreload(staged.libsInApk ? libsIndex : null);
+
+                stage = Stage.LAUNCH;
+                begin(stage);
+                message(stage, "Launching Minecraft...");
+                Intent mcActivity = buildLaunchIntent(mcInfo);
+                // Joined just before the Launcher class is loaded, whose static block would load them itself
+                stage = Stage.PRELOAD_LIBS;
+                awaitPreload(preload);
+                stage = Stage.LAUNCH;
+                launchMinecraft(mcActivity);
+                finishQuietly(stage);
+            } finally {
+                // Kept open until the preload is joined: it reads ELF headers of in-place libraries through libsIndex
+                apkIndex.close();
+                if (libsIndex != apkIndex) {
+                    libsIndex.close();
+                }
+            }
+            recordHistory(mcInfo);
+            if (selectedApkPath != null) {
+                // Downloaded versions are evicted least recently launched first
+                VersionStore.getInstance(context).markLaunched(new File(selectedApkPath));
+            }
+            final Map<Stage, Long> result = Collections.unmodifiableMap(new EnumMap<>(timings));
+            post(l -> l.onLaunched(result));
+        } catch (CancelledException e) {
+            final Stage at = stage;
+            // Delivered even though cancel() silenced every other event
+            log.append("-> Launch cancelled during " + at.label);
+            mainHandler.post(() -> listener.onCancelled(at));
+        } catch (Exception e) {
+            final Stage at = stage;
+            String logMessage = e.getCause() != null ? e.getCause().toString() : e.toString();
+            log.append("Launching failed at " + at.label + ": " + logMessage);
+            post(l -> l.onFailed(at, e));
+        }
+    }
+
+    private ApplicationInfo resolveApk() throws Exception {
+        pruneLauncherDexDir();
+        boolean usingSelectedApk = selectedApkPath != null && new File(selectedApkPath).exists();
+        if (!usingSelectedApk) {
+            selectedApkPath = null;
+        }
+        ApplicationInfo mcInfo;
+        try {
+            mcInfo = context.getPackageManager().getApplicationInfo(packageName, PackageManager.GET_META_DATA);
+        } catch (PackageManager.NameNotFoundException e) {
+            if (usingSelectedApk) {
+                throw new LaunchException("Selected APK not found", "The selected APK file is missing or corrupted");
+            }
+            throw new LaunchException("Minecraft cant be found", "Perhaps you dont have it installed?");
+        }
+        installedCodeDir = new File(mcInfo.sourceDir).getParentFile();
+        if (usingSelectedApk) {
+            // Override the sourceDir with our selected APK
+            mcInfo.sourceDir = selectedApkPath;
+            // A standalone APK carries its own libraries; the installed package's splits and libs don't apply
+            mcInfo.splitSourceDirs = null;
+            message(Stage.RESOLVE_APK, "Using selected APK: " + selectedApkPath);
+            // Cheap size/mtime check against the download record, so a truncated file fails here and not in native code
+            ApkIntegrity.Status integrity = ApkIntegrity.check(new File(selectedApkPath));
+            if (integrity == ApkIntegrity.Status.CORRUPT) {
+                throw new LaunchException("Selected APK is damaged", "The selected APK is incomplete or was changed after it was downloaded. Download this version again");
+            }
+            message(Stage.RESOLVE_APK, integrity == ApkIntegrity.Status.VERIFIED ? "APK matches its download record" : "APK has no download record, not verified");
+        } else {
+            message(Stage.RESOLVE_APK, "Found Minecraft at: " + mcInfo.sourceDir);
+        }
+        return mcInfo;
+    }
+
+    private void pruneLauncherDexDir() {
+        DexStagingCache dexCache = launcherDexCache();
+        File cacheDexDir = dexCache.getDir();
+        if (cacheDexDir.exists() && cacheDexDir.isDirectory()) {
+            for (String name : dexCache.prune(LAUNCHER_DEX_NAME)) {
+                message(Stage.RESOLVE_APK, name + " deleted");
+            }
+        }
+        // Libraries used to be extracted straight into code_cache; they now live in per-version staging dirs
+        File[] legacy = context.getCodeCacheDir().listFiles((dir, name) -> name.endsWith(".so") || name.equals("libs.manifest"));
+        if (legacy != null) {
+            for (File f : legacy) {
+                f.delete();
+            }
+        }
+    }
+
+    private DexStagingCache launcherDexCache() {
+        return new DexStagingCache(new File(context.getCodeCacheDir(), "dex"));
+    }
+
+    /**
+     * Stages the APK into its per-APK directory, inflating every dex and native
+     * library entry that needs it in parallel. Registration happens afterwards,
+     * in a fixed order, in the REGISTER_PATHS stage.
+     */
+    private ApkStager.Staged stageApk(ApkIndex apkIndex, ApkIndex libsIndex, boolean extractLibs) throws Exception {
+        begin(Stage.STAGE_DEX);
+        begin(Stage.STAGE_LIBS);
+        ApkStager stager = PreStager.newStager(context);
+        // A selected APK is in external storage, which the linker cannot map libraries from
+        stager.setInPlaceDir(installedCodeDir);
+        // Pinned for the life of the process: the paths are registered below and cannot be unregistered
+        ApkStager.Staged staged = stager.stage(apkIndex, libsIndex, extractLibs, true,
+            new StagingEngine.PlanListener() {
+                @Override
+                public void onEntryStaged(String name, long bytes, int completed, int total) {
+                    Stage stage = name.endsWith(".dex") ? Stage.STAGE_DEX : Stage.STAGE_LIBS;
+                    addBytes(stage, bytes);
+                    log.append("-> [" + completed + "/" + total + "] " + name + " staged (" + (bytes / 1024) + " KB)");
+                    post(l -> l.onEntryStaged(stage, name, bytes, completed, total));
+                }
+
+                @Override
+                public void onPlanFinished(StagingEngine.Plan plan) {
+                    finishQuietly(plan instanceof DexStagingCache.Plan ? Stage.STAGE_DEX : Stage.STAGE_LIBS);
+                }
+            });
+        // Libraries loaded in place or from the installed package have no plan of their own
+        finishQuietly(Stage.STAGE_DEX);
+        finishQuietly(Stage.STAGE_LIBS);
+        for (String key : staged.evicted) {
+            message(Stage.STAGE_LIBS, "Staged version " + key + " evicted (over storage budget)");
+        }
+        checkCancelled();
+        return staged;
+    }
+
+    private void registerDexFiles(DexStagingCache.Result staged, Object pathList) throws Exception {
+        Method addDexPath = pathList.getClass().getDeclaredMethod("addDexPath", String.class, File.class);
+        File launcherDex = new File(launcherDexCache().getDir(), LAUNCHER_DEX_NAME);
+
+        // The launcher dex is read-only once staged, so replace it instead of writing over it
+        if (launcherDex.exists() && !launcherDex.delete()) {
+            throw new Exception("Failed to replace " + LAUNCHER_DEX_NAME);
+        }
+        ApkEntryCopier.copyStream(context.getAssets().open(LAUNCHER_DEX_NAME), launcherDex);
+        addBytes(Stage.REGISTER_PATHS, launcherDex.length());
+        message(Stage.REGISTER_PATHS, LAUNCHER_DEX_NAME + " copied to " + launcherDex.getAbsolutePath());
+
+        // Last point at which a cancel is honoured: class loader changes cannot be undone
+        checkCancelled();
+        if (launcherDex.setReadOnly()) {
+            addDexPath.invoke(pathList, launcherDex.getAbsolutePath(), null);
+            message(Stage.REGISTER_PATHS, LAUNCHER_DEX_NAME + " added to dex path list");
+        } else {
+            throw new Exception("Failed to set launcher dex as read-only");
+        }
+
+        if (staged.reused) {
+            message(Stage.REGISTER_PATHS, "APK unchanged, reusing staged dex files");
+        } else {
+            message(Stage.REGISTER_PATHS, "Dex files " + staged.copied.toString() + " copied from APK");
+        }
+        ArrayList<String> addedDexes = new ArrayList<String>();
+        for (File mcDex : staged.dexFiles) {
+            addDexPath.invoke(pathList, mcDex.getAbsolutePath(), null);
+            addedDexes.add(mcDex.getName());
+        }
+        message(Stage.REGISTER_PATHS, "Dex files " + addedDexes.toString() + " added to dex path list");
+    }
+
+    private static boolean needsLibExtraction(ApplicationInfo mcInfo) {
+        File libdir = new File(mcInfo.nativeLibraryDir);
+        return libdir.list() == null || libdir.list().length == 0
+            || (mcInfo.flags & ApplicationInfo.FLAG_EXTRACT_NATIVE_LIBS) != ApplicationInfo.FLAG_EXTRACT_NATIVE_LIBS;
+    }
+
+    private void registerNativeLibraries(ApplicationInfo mcInfo, ApkStager.Staged staged, Object pathList) throws Exception {
+        Method addNativePath = pathList.getClass().getDeclaredMethod("addNativePath", Collection.class);
+        ArrayList<String> libDirList = new ArrayList<>();
+        if (staged.libsInApk) {
+            message(Stage.REGISTER_PATHS, "Native libraries are stored and page-aligned, loading them from the APK");
+            libDirList.add(staged.nativeLibraryPath);
+        } else if (staged.libs != null) {
+            NativeLibExtractor.Result libs = staged.libs;
+            message(Stage.REGISTER_PATHS, "Native libraries extracted: " + libs.extracted.size() + ", reused: " + libs.reused.size());
+            libDirList.add(staged.nativeLibraryPath);
+        } else {
+            libDirList.add(mcInfo.nativeLibraryDir);
+        }
+        addNativePath.invoke(pathList, libDirList);
+        message(Stage.REGISTER_PATHS, libDirList.get(0) + " added to native library directory path");
+    }
+
+    /**
+     * Starts loading the Launcher's libraries on background threads in
+     * dependency order, so its static initializer on the UI thread finds them
+     * already loaded. Joined with {@link #awaitPreload}.
+     */
+    private CompletableFuture<Map<String, Throwable>> startPreload(ApkIndex inPlaceLibsIndex) {
+        NativePreloader preloader = new NativePreloader(context.getClassLoader(), inPlaceLibsIndex);
+        return preloader.start(NativePreloader.LAUNCHER_LIBRARIES, (name, elapsedMs, error) -> {
+            if (error == null) {
+                log.append("-> lib" + name + ".so loaded in " + elapsedMs + " ms");
+            } else {
+                log.append("-> lib" + name + ".so failed to preload: " + error);
+            }
+            post(l -> l.onLibraryPreloaded(name, elapsedMs, error));
+        });
+    }
+
+    /**
+     * Waits for {@link #startPreload} and fails the launch if any library did
+     * not load: the Launcher's static block would only hit the same error on
+     * the UI thread and crash the game before it shows anything.
+     */
+    private void awaitPreload(CompletableFuture<Map<String, Throwable>> preload) throws IOException, LaunchException {
+        Map<String, Throwable> failures = NativePreloader.await(preload);
+        finishQuietly(Stage.PRELOAD_LIBS);
+        nativeProfile = NativeStartupProfile.read();
+        if (nativeProfile != null) {
+            message(Stage.PRELOAD_LIBS, "Native: " + nativeProfile);
+        }
+        if (failures.isEmpty()) {
+            return;
+        }
+        StringBuilder names = new StringBuilder();
+        StringBuilder errors = new StringBuilder();
+        for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append("lib").append(failure.getKey()).append(".so");
+            errors.append("\nlib").append(failure.getKey()).append(".so: ").append(failure.getValue().getMessage());
+        }
+        log.append("-> " + failures.size() + " of " + NativePreloader.LAUNCHER_LIBRARIES.length
+            + " libraries failed to preload: " + names);
+        throw new LaunchException("Native libraries failed to load", "Minecraft cannot start without " + names + errors);
+    }
+
+    private static Object getPathList(ClassLoader classLoader) throws Exception {
+        Field pathListField = Objects.requireNonNull(classLoader.getClass().getSuperclass()).getDeclaredField("pathList");
+        pathListField.setAccessible(true);
+        return pathListField.get(classLoader);
+    }
+
+    public static String getApkWithLibs(ApplicationInfo pkg) {
+        return ApkStager.findLibsApk(pkg.sourceDir, pkg.splitSourceDirs, Build.SUPPORTED_ABIS[0]);
+    }
+
+    private Intent buildLaunchIntent(ApplicationInfo mcInfo) {
+        // Create a new intent for Minecraft to ensure it launches in a new instance
+        Intent mcActivity = launchIntent != null ? new Intent(launchIntent) : new Intent();
+        // Added rather than set, so URI grants on a forwarded intent survive
+        mcActivity.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        mcActivity.putExtra("MC_SRC", mcInfo.sourceDir);
+
+        if (mcInfo.splitSourceDirs != null) {
+            ArrayList<String> listSrcSplit = new ArrayList<>();
+            Collections.addAll(listSrcSplit, mcInfo.splitSourceDirs);
+            mcActivity.putExtra("MC_SPLIT_SRC", listSrcSplit);
+        }
+
+        // Add additional flags to ensure proper launch
+        mcActivity.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION);
+        return mcActivity;
+    }
+
+    private void launchMinecraft(Intent mcActivity) throws ClassNotFoundException {
+        Class<?> launcherClass = context.getClassLoader().loadClass("com.mojang.minecraftpe.Launcher");
+        mcActivity.setClass(context, launcherClass);
+        context.startActivity(mcActivity);
+    }
+
+    private void checkCancelled() throws CancelledException {
+        if (cancelled) {
+            throw new CancelledException();
+        }
+    }
+
+    private void begin(Stage stage) {
+        synchronized (startTimes) {
+            startTimes.put(stage, System.nanoTime());
+        }
+        post(l -> l.onStageStarted(stage));
+    }
+
+    private void finish(Stage stage) throws CancelledException {
+        finishQuietly(stage);
+        checkCancelled();
+    }
+
+    /** Records a stage's timing once; later calls for the same stage are ignored. */
+    private void finishQuietly(Stage stage) {
+        final long elapsedMs;
+        final long stageBytes;
+        synchronized (startTimes) {
+            Long start = startTimes.get(stage);
+            if (start == null || timings.containsKey(stage)) {
+                return;
+            }
+            elapsedMs = (System.nanoTime() - start) / 1000000;
+            timings.put(stage, elapsedMs);
+            Long b = bytes.get(stage);
+            stageBytes = b != null ? b : 0;
+        }
+        log.append("-> " + stage.label + " took " + elapsedMs + " ms (" + (stageBytes / 1024) + " KB)");
+        post(l -> l.onStageFinished(stage, elapsedMs, stageBytes));
+    }
+
+    private void addBytes(Stage stage, long n) {
+        synchronized (startTimes) {
+            Long b = bytes.get(stage);
+            bytes.put(stage, (b != null ? b : 0) + n);
+        }
+    }
+
+    private void recordHistory(ApplicationInfo mcInfo) {
+        Stage[] stages = Stage.values();
+        int phases = stages.length + NativeStartupProfile.PHASE_LABELS.length;
+        long[] elapsed = new long[phases];
+        long[] stageBytes = new long[phases];
+        synchronized (startTimes) {
+            for (Stage s : stages) {
+                Long t = timings.get(s);
+                Long b = bytes.get(s);
+                elapsed[s.ordinal()] = t != null ? t : -1;
+                stageBytes[s.ordinal()] = b != null ? b : 0;
+            }
+        }
+        // The onCreate phases are filled in once the Launcher activity reports them
+        long[] nativeMs = nativeProfile != null ? nativeProfile.phaseMillis() : NativeStartupProfile.unknownPhaseMillis();
+        System.arraycopy(nativeMs, 0, elapsed, stages.length, nativeMs.length);
+        String label;
+        if (selectedApkPath != null) {
+            // Stored versions are named by their hash; record the title they were downloaded under
+            File apk = new File(selectedApkPath);
+            String title = VersionStore.getInstance(context).titleOf(apk);
+            label = title != null ? title : apk.getName();
+        } else {
+            try {
+                label = packageName + " " + context.getPackageManager().getPackageInfo(packageName, 0).versionName;
+            } catch (PackageManager.NameNotFoundException e) {
+                label = packageName;
+            }
+        }
+        try {
+            getHistory(context).append(new LaunchHistory.Record(System.currentTimeMillis(), label, elapsed, stageBytes));
+            NativeStartupProfile.onLaunchRecorded(context);
+        } catch (IOException e) {
+            // Telemetry must never get in the way of the launch itself
+        }
+    }
+
+    private void message(Stage stage, String message) {
+        log.append("-> " + message);
+        post(l -> l.onMessage(stage, message));
+    }
+
+    private interface Event {
+        void deliver(Listener listener);
+    }
+
+    private void post(Event event) {
+        mainHandler.post(() -> {
+            if (!cancelled) {
+                event.deliver(listener);
+            }
+        });
+    }
+}
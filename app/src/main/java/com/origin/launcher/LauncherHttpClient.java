@@ -0,0 +1,129 @@
+package com.origin.launcher;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The one OkHttp client all launcher traffic goes through, so every request
+ * shares a connection pool (HTTP/2 where the server offers it), a small disk
+ * cache for API and list responses, the same timeouts and User-Agent, the same
+ * retry policy, and the per-host counters in {@link HttpMetrics}. Callers that
+ * need different settings derive a client with {@code client().newBuilder()},
+ * which keeps the pool and the metrics.
+ */
+public class LauncherHttpClient {
+    private static final String TAG = "LauncherHttpClient";
+    public static final String USER_AGENT = "Mozilla/5.0 (Android) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124 Mobile Safari/537.36";
+    private static final long CACHE_SIZE = 10L * 1024 * 1024;
+    private static final long CONNECT_TIMEOUT_S = 15;
+    private static final long READ_TIMEOUT_S = 30;
+    /** Enough to keep every segment of both running downloads warm between retries. */
+    private static final int MAX_IDLE_CONNECTIONS = 2 * ApkDownloader.DEFAULT_CONNECTIONS;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    /** Attempts for an idempotent request that fails before its response or gets a 502, 503 or 504. */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 500;
+
+    private static LauncherHttpClient instance;
+
+    private final HttpMetrics metrics = new HttpMetrics();
+    private final OkHttpClient client;
+    private final OkHttpClient downloadClient;
+
+    private LauncherHttpClient(Context context) {
+        client = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .cache(new Cache(new File(context.getCacheDir(), "http"), CACHE_SIZE))
+            .connectTimeout(CONNECT_TIMEOUT_S, TimeUnit.SECONDS)
+            .readTimeout(READ_TIMEOUT_S, TimeUnit.SECONDS)
+            .writeTimeout(READ_TIMEOUT_S, TimeUnit.SECONDS)
+            .retryOnConnectionFailure(true)
+            .addInterceptor(new DefaultsInterceptor())
+            .eventListenerFactory(metrics)
+            .build();
+        // HTTP/2 would multiplex every Range segment onto one TCP connection,
+        // which is exactly the per-connection cap segmenting works around
+        downloadClient = client.newBuilder()
+            .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+            .build();
+    }
+
+    public static synchronized LauncherHttpClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new LauncherHttpClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public OkHttpClient client() {
+        return client;
+    }
+
+    /** For {@link ApkDownloader}: same pool and policy, one HTTP/1.1 connection per segment. */
+    public OkHttpClient downloadClient() {
+        return downloadClient;
+    }
+
+    public HttpMetrics metrics() {
+        return metrics;
+    }
+
+    public void logMetrics() {
+        for (HttpMetrics.HostStats stats : metrics.snapshot()) {
+            Log.d(TAG, stats.toString());
+        }
+    }
+
+    /**
+     * Adds the launcher's User-Agent unless the caller set one, and retries
+     * GET and HEAD requests that failed to connect or hit a transient server
+     * error. A failure while reading the body is the caller's to retry, since
+     * only the caller knows where to resume.
+     */
+    private static class DefaultsInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            if (request.header("User-Agent") == null) {
+                request = request.newBuilder().header("User-Agent", USER_AGENT).build();
+            }
+            boolean idempotent = request.method().equals("GET") || request.method().equals("HEAD");
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    Response response = chain.proceed(request);
+                    int code = response.code();
+                    if (!idempotent || attempt >= MAX_ATTEMPTS || (code != 502 && code != 503 && code != 504)) {
+                        return response;
+                    }
+                    response.close();
+                } catch (IOException e) {
+                    if (!idempotent || attempt >= MAX_ATTEMPTS || chain.call().isCanceled()) {
+                        throw e;
+                    }
+                }
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted between retries");
+                }
+            }
+        }
+    }
+}
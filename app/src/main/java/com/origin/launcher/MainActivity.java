@@ -22,6 +22,24 @@ public class MainActivity extends BaseThemedActivity {
     private SettingsFragment settingsFragment;
     private int currentFragmentIndex = 0; // Move this to class level
     private LinearProgressIndicator globalProgress;
+    private android.widget.TextView globalStatus;
+    private int globalProgressMax;
+    private final DownloadManager.Observer downloadObserver = new DownloadManager.Observer() {
+        @Override
+        public void onDownloadsChanged(java.util.List<DownloadManager.Task> tasks) {
+            // The bar follows the progress hub, which also sees downloads start and stop
+        }
+
+        @Override
+        public void onDownloadFinished(DownloadManager.Task task) {
+            if (task.state == DownloadManager.State.COMPLETED) {
+                android.widget.Toast.makeText(MainActivity.this, "Downloaded " + task.title, android.widget.Toast.LENGTH_SHORT).show();
+            } else if (task.state == DownloadManager.State.FAILED) {
+                android.widget.Toast.makeText(MainActivity.this, "Download failed: " + task.title, android.widget.Toast.LENGTH_SHORT).show();
+            }
+        }
+    };
+    private final ProgressHub.Listener progressListener = this::showDownloads;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,6 +50,10 @@ public class MainActivity extends BaseThemedActivity {
         // Check if this is the first launch
         checkFirstLaunch();
 
+        // Downloads outlive the fragments that start them; their progress is shown here
+        DownloadManager.getInstance(this).addObserver(downloadObserver);
+        ProgressHub.getInstance().addListener(progressListener);
+
         BottomNavigationView bottomNavigationView = findViewById(R.id.bottom_navigation);
         
         // Apply theme to bottom navigation
@@ -271,6 +293,54 @@ public class MainActivity extends BaseThemedActivity {
             globalProgress.setVisibility(View.GONE);
             globalProgress.setIndeterminate(false);
         }
+        if (globalStatus != null) {
+            globalStatus.setVisibility(View.GONE);
+        }
+    }
+
+    /** Speed and time left under the global bar; either may be -1 when not known yet. */
+    public void updateGlobalStatus(long bytesPerSecond, long etaSeconds) {
+        if (globalStatus == null) {
+            globalStatus = findViewById(R.id.global_download_status);
+        }
+        if (globalStatus == null) {
+            return;
+        }
+        if (bytesPerSecond <= 0) {
+            globalStatus.setText("Connecting…");
+        } else {
+            String text = android.text.format.Formatter.formatShortFileSize(this, bytesPerSecond) + "/s";
+            if (etaSeconds >= 0) {
+                text += " · " + formatEta(etaSeconds) + " left";
+            }
+            globalStatus.setText(text);
+        }
+        globalStatus.setVisibility(View.VISIBLE);
+    }
+
+    private static String formatEta(long seconds) {
+        if (seconds >= 3600) {
+            return String.format(java.util.Locale.US, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        }
+        return String.format(java.util.Locale.US, "%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /** One bar for all active downloads together, in KB so several APKs cannot overflow an int. */
+    private void showDownloads(ProgressHub.Snapshot progress) {
+        if (progress.active == 0) {
+            hideGlobalProgress();
+            globalProgressMax = 0;
+            return;
+        }
+        int max = progress.total > 0 ? (int) (progress.total / 1024) : -1;
+        if (max != globalProgressMax || globalProgress == null || globalProgress.getVisibility() != View.VISIBLE) {
+            showGlobalProgress(max);
+            globalProgressMax = max;
+        }
+        if (max > 0) {
+            updateGlobalProgress((int) (progress.downloaded / 1024));
+        }
+        updateGlobalStatus(progress.bytesPerSecond, progress.etaSeconds());
     }
 
     @Override
@@ -283,6 +353,8 @@ public class MainActivity extends BaseThemedActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        DownloadManager.getInstance(this).removeObserver(downloadObserver);
+        ProgressHub.getInstance().removeListener(progressListener);
         // Clean up RPC helper
         DiscordRPCHelper.getInstance().cleanup();
     }
@@ -0,0 +1,166 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Extracts lib/&lt;abi&gt;/*.so from a Minecraft APK into a directory, keeping a
+ * manifest of name, size and CRC32 for every extracted library. Only missing
+ * or changed libraries are written; each one goes to a temp file, is verified
+ * against the central directory size and CRC (STORED entries too, read back
+ * after the zero-copy transfer) and then renamed into place, and the
+ * manifest is only rewritten once all libraries are in place.
+ */
+public class NativeLibExtractor {
+    private static final String MANIFEST_NAME = "libs.manifest";
+
+    private final File outDir;
+
+    public NativeLibExtractor(File outDir) {
+        this.outDir = outDir;
+    }
+
+    public static class Result {
+        public final List<String> extracted;
+        public final List<String> reused;
+
+        Result(List<String> extracted, List<String> reused) {
+            this.extracted = extracted;
+            this.reused = reused;
+        }
+    }
+
+    /** True when {@code name} should be left to the launcher's own bundled copy. */
+    static boolean isSkipped(String name) {
+        return name.contains("c++_shared");
+    }
+
+    /** Extracts on the calling thread; see {@link #plan} to run the copies on a {@link StagingEngine}. */
+    public Result extract(ApkIndex index, String abi) throws IOException {
+        Plan plan = plan(index, abi);
+        StagingEngine.runSequential(plan);
+        return plan.getResult();
+    }
+
+    public Plan plan(ApkIndex index, String abi) throws IOException {
+        if (!outDir.exists() && !outDir.mkdirs()) {
+            throw new IOException("Failed to create " + outDir);
+        }
+        File manifestFile = new File(outDir, MANIFEST_NAME);
+        StagingManifest previous = StagingManifest.read(manifestFile);
+        StagingManifest current = new StagingManifest();
+        current.setApkIdentity(index.getFile());
+        Plan plan = new Plan(previous, current, manifestFile);
+
+        for (ApkIndex.Entry ze : index.nativeLibraries(abi)) {
+            if (isSkipped(ze.name)) {
+                continue;
+            }
+            String strippedName = ze.simpleName();
+            StagingManifest.Entry record = new StagingManifest.Entry(ze.crc, ze.size);
+            current.entries.put(strippedName, record);
+
+            File target = new File(outDir, strippedName);
+            StagingManifest.Entry old = previous != null ? previous.entries.get(strippedName) : null;
+            if (record.equals(old) && target.isFile() && target.length() == record.size) {
+                plan.reused.add(strippedName);
+                continue;
+            }
+            if (manifestFile.exists() && !manifestFile.delete()) {
+                throw new IOException("Failed to invalidate " + manifestFile);
+            }
+            plan.addExtract(index, ze, target, record);
+        }
+        return plan;
+    }
+
+    public class Plan extends StagingEngine.Plan {
+        private final StagingManifest previous;
+        private final StagingManifest current;
+        private final File manifestFile;
+        private final List<String> extracted = new ArrayList<>();
+        private final List<String> reused = new ArrayList<>();
+        private Result result;
+
+        Plan(StagingManifest previous, StagingManifest current, File manifestFile) {
+            this.previous = previous;
+            this.current = current;
+            this.manifestFile = manifestFile;
+        }
+
+        void addExtract(final ApkIndex index, final ApkIndex.Entry entry, final File target, final StagingManifest.Entry record) {
+            extracted.add(target.getName());
+            tasks.add(new StagingEngine.Task(entry.name, entry.size) {
+                @Override
+                protected void run() throws IOException {
+                    extractVerified(index, entry, target, record);
+                }
+            });
+        }
+
+        @Override
+        protected void commit() throws IOException {
+            // Libraries dropped by the new APK must not linger on the native search path
+            if (previous != null) {
+                for (Map.Entry<String, StagingManifest.Entry> e : previous.entries.entrySet()) {
+                    if (!current.entries.containsKey(e.getKey())) {
+                        new File(outDir, e.getKey()).delete();
+                    }
+                }
+            }
+            current.write(manifestFile);
+            result = new Result(extracted, reused);
+        }
+
+        public Result getResult() {
+            return result;
+        }
+    }
+
+    private static void extractVerified(ApkIndex index, ApkIndex.Entry entry, File target, StagingManifest.Entry expected) throws IOException {
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long written;
+        try {
+            written = ApkEntryCopier.copy(index, entry, tmp, crc);
+            if (entry.isStored()) {
+                // The zero-copy transfer never saw the bytes; read them back while they are still in the page cache
+                crc = crc32Of(tmp);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (written != expected.size || tmp.length() != expected.size || crc.getValue() != expected.crc) {
+            tmp.delete();
+            throw new IOException("Extracted " + target.getName() + " does not match the APK (size "
+                + written + "/" + expected.size + ", crc " + Long.toHexString(crc.getValue()) + "/"
+                + Long.toHexString(expected.crc) + ")");
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Failed to move " + tmp.getName() + " into place");
+        }
+    }
+
+    private static CRC32 crc32Of(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(Integer.MAX_VALUE, size - position));
+                crc.update(map);
+            }
+        }
+        return crc;
+    }
+}
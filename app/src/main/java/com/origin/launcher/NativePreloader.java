@@ -0,0 +1,228 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the libraries of the Launcher's static initializer ahead of time, off
+ * the UI thread, so that by the time the class initializes every
+ * {@code System.loadLibrary} there is a no-op. Each library waits only for the
+ * libraries it really depends on: its DT_NEEDED entries within the set, plus
+ * the ones it is known to dlopen at runtime. Libraries with nothing between
+ * them load in parallel.
+ *
+ * Loads happen from this class, which lives in the same class loader the
+ * Launcher is defined in, so they count as loaded for the Launcher too.
+ */
+public class NativePreloader {
+    /** Same names and order as the static block of com.mojang.minecraftpe.Launcher. */
+    public static final String[] LAUNCHER_LIBRARIES = {
+        "c++_shared", "fmod", "maesdk", "minecraftpe", "mc", "materialbinloader"
+    };
+
+    /** Dependencies that do not show up as DT_NEEDED because they are dlopen()ed by soname. */
+    private static final Map<String, String[]> RUNTIME_DEPENDENCIES = new HashMap<>();
+
+    static {
+        // mc-init.cpp resolves android_main and ANativeActivity_onCreate from libminecraftpe in JNI_OnLoad
+        RUNTIME_DEPENDENCIES.put("mc", new String[]{"minecraftpe"});
+        // The material loader patches the game once it is up
+        RUNTIME_DEPENDENCIES.put("materialbinloader", new String[]{"minecraftpe", "mc"});
+    }
+
+    private static ThreadPoolExecutor pool;
+
+    public interface Callback {
+        /** Called from a loader thread; {@code error} is null on success. */
+        void onLibraryLoaded(String name, long elapsedMs, Throwable error);
+    }
+
+    private final ClassLoader classLoader;
+    private final ApkIndex libsIndex;
+
+    /**
+     * @param libsIndex the open index of the APK libraries are mapped from in
+     *                  place, if any, so their ELF headers can be read without
+     *                  parsing the APK again
+     */
+    public NativePreloader(ClassLoader classLoader, ApkIndex libsIndex) {
+        this.classLoader = classLoader;
+        this.libsIndex = libsIndex;
+    }
+
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            final AtomicInteger counter = new AtomicInteger();
+            int threads = Math.max(1, Math.min(LAUNCHER_LIBRARIES.length, Runtime.getRuntime().availableProcessors()));
+            pool = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), r -> {
+                    Thread t = new Thread(r, "preload-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * Resolves the dependency graph of {@code names} and loads them on the
+     * preload pool. The returned future completes once every library has been
+     * attempted, with the ones that failed to load mapped to their error, in
+     * the order of {@code names}.
+     */
+    public CompletableFuture<Map<String, Throwable>> start(String[] names, Callback callback) {
+        ThreadPoolExecutor executor = getPool();
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        return CompletableFuture.supplyAsync(() -> resolve(names), executor).thenCompose(graph -> {
+            Map<String, CompletableFuture<Void>> loads = new HashMap<>();
+            for (Map.Entry<String, List<String>> node : graph.entrySet()) {
+                String name = node.getKey();
+                List<CompletableFuture<Void>> deps = new ArrayList<>();
+                for (String dep : node.getValue()) {
+                    deps.add(loads.get(dep));
+                }
+                CompletableFuture<Void> load = CompletableFuture.allOf(deps.toArray(new CompletableFuture[0]))
+                    .handleAsync((ignored, error) -> {
+                        Throwable failure = load(name, callback);
+                        if (failure != null) {
+                            failures.put(name, failure);
+                        }
+                        return null;
+                    }, executor);
+                loads.put(name, load);
+            }
+            return CompletableFuture.allOf(loads.values().toArray(new CompletableFuture[0]));
+        }).thenApply(ignored -> {
+            Map<String, Throwable> ordered = new LinkedHashMap<>();
+            for (String name : names) {
+                if (failures.containsKey(name)) {
+                    ordered.put(name, failures.get(name));
+                }
+            }
+            return ordered;
+        });
+    }
+
+    /** Blocks until {@link #start} is done and returns the libraries that failed to load. */
+    public static Map<String, Throwable> await(CompletableFuture<Map<String, Throwable>> preload) throws IOException {
+        try {
+            return preload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while preloading native libraries", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Native library preloading failed", e.getCause());
+        }
+    }
+
+    private Throwable load(String name, Callback callback) {
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            System.loadLibrary(name);
+        } catch (Throwable t) {
+            error = t;
+        }
+        if (callback != null) {
+            callback.onLibraryLoaded(name, (System.nanoTime() - start) / 1000000, error);
+        }
+        return error;
+    }
+
+    /**
+     * Maps each library to the earlier libraries of the list it must wait for.
+     * Only edges to earlier entries are kept, so the declared order stays a
+     * valid load order and the graph can never have a cycle. A library whose
+     * ELF cannot be read waits for everything before it, as in the static block.
+     */
+    private Map<String, List<String>> resolve(String[] names) {
+        Map<String, List<String>> graph = new LinkedHashMap<>();
+        Map<String, ApkIndex> opened = new HashMap<>();
+        try {
+            for (int i = 0; i < names.length; i++) {
+                List<String> deps = new ArrayList<>();
+                List<String> needed = readNeeded(names[i], opened);
+                for (int j = 0; j < i; j++) {
+                    String earlier = names[j];
+                    if (needed == null || needed.contains("lib" + earlier + ".so")
+                            || isRuntimeDependency(names[i], earlier)) {
+                        deps.add(earlier);
+                    }
+                }
+                graph.put(names[i], deps);
+            }
+        } finally {
+            for (ApkIndex index : opened.values()) {
+                try {
+                    index.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static boolean isRuntimeDependency(String name, String candidate) {
+        String[] deps = RUNTIME_DEPENDENCIES.get(name);
+        if (deps != null) {
+            for (String dep : deps) {
+                if (dep.equals(candidate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** DT_NEEDED of the library the class loader would load for {@code name}, or null if unknown. */
+    private List<String> readNeeded(String name, Map<String, ApkIndex> opened) {
+        try {
+            String path = findLibrary(name);
+            if (path == null) {
+                return null;
+            }
+            int bang = path.indexOf("!/");
+            if (bang < 0) {
+                try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ)) {
+                    return ElfReader.neededLibraries(channel, 0);
+                }
+            }
+            // Mapped straight from an APK: read the ELF in place
+            File apk = new File(path.substring(0, bang));
+            ApkIndex index = libsIndex != null && libsIndex.getFile().equals(apk) ? libsIndex : opened.get(apk.getPath());
+            if (index == null) {
+                index = ApkIndex.open(apk);
+                opened.put(apk.getPath(), index);
+            }
+            ApkIndex.Entry entry = index.getEntry(path.substring(bang + 2));
+            if (entry == null || !entry.isStored()) {
+                return null;
+            }
+            return ElfReader.neededLibraries(index.getChannel(), index.dataOffset(entry));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String findLibrary(String name) throws Exception {
+        // BaseDexClassLoader makes this public; plain ClassLoader only has the protected hook
+        Method findLibrary = classLoader.getClass().getMethod("findLibrary", String.class);
+        return (String) findLibrary.invoke(classLoader, name);
+    }
+}
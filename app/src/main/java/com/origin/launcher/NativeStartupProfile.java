@@ -0,0 +1,162 @@
+package com.origin.launcher;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Native side of the launch timings, recorded by libmc (mc-init.cpp): how long
+ * JNI_OnLoad spent in dlopen/dlsym of libminecraftpe, any dlerror() it hit,
+ * and when and for how long ANativeActivity_onCreate was forwarded. Stored in
+ * the launch history after the Java stages.
+ */
+public final class NativeStartupProfile {
+    private static final String TAG = "NativeStartupProfile";
+
+    /** Launch history phases, appended after {@link LaunchPipeline.Stage}. */
+    public static final String[] PHASE_LABELS = {"dlopen mcpe", "dlsym", "Until onCreate", "Native onCreate"};
+    static final int PHASE_DLOPEN = 0;
+    static final int PHASE_DLSYM = 1;
+    static final int PHASE_UNTIL_ONCREATE = 2;
+    static final int PHASE_ONCREATE = 3;
+
+    // Indices into the array filled by mc-init.cpp; keep in sync with its PROFILE_* enum
+    private static final int DLOPEN_NS = 0;
+    private static final int DLSYM_MAIN_NS = 1;
+    private static final int DLSYM_ONCREATE_NS = 2;
+    private static final int ONLOAD_NS = 3;
+    private static final int UNTIL_ONCREATE_NS = 4;
+    private static final int ONCREATE_NS = 5;
+    private static final int FAILURES = 6;
+
+    private static final Object LOCK = new Object();
+    private static Context pendingContext;
+    private static boolean launchRecorded;
+    private static boolean activityCreated;
+
+    public final long dlopenNs;
+    public final long dlsymNs;
+    public final long onLoadNs;
+    /** From the start of JNI_OnLoad to the forward, or -1 if the activity has not been created yet. */
+    public final long untilOnCreateNs;
+    public final long onCreateNs;
+    public final int failures;
+    public final String errors;
+
+    private NativeStartupProfile(long[] t, String errors) {
+        this.dlopenNs = t[DLOPEN_NS];
+        this.dlsymNs = t[DLSYM_MAIN_NS] + t[DLSYM_ONCREATE_NS];
+        this.onLoadNs = t[ONLOAD_NS];
+        this.untilOnCreateNs = t[UNTIL_ONCREATE_NS] > 0 ? t[UNTIL_ONCREATE_NS] : -1;
+        this.onCreateNs = t[UNTIL_ONCREATE_NS] > 0 ? t[ONCREATE_NS] : -1;
+        this.failures = (int) t[FAILURES];
+        this.errors = errors;
+    }
+
+    private static native long[] nativeGetTimings();
+
+    private static native String nativeGetErrors();
+
+    /** The profile so far, or null while libmc is not loaded. Never loads it. */
+    public static NativeStartupProfile read() {
+        try {
+            return new NativeStartupProfile(nativeGetTimings(), nativeGetErrors());
+        } catch (UnsatisfiedLinkError e) {
+            return null;
+        }
+    }
+
+    /** Values for {@link #PHASE_LABELS}, in milliseconds, -1 for what has not happened. */
+    public long[] phaseMillis() {
+        long[] ms = new long[PHASE_LABELS.length];
+        ms[PHASE_DLOPEN] = toMillis(dlopenNs);
+        ms[PHASE_DLSYM] = toMillis(dlsymNs);
+        ms[PHASE_UNTIL_ONCREATE] = toMillis(untilOnCreateNs);
+        ms[PHASE_ONCREATE] = toMillis(onCreateNs);
+        return ms;
+    }
+
+    /** {@link #phaseMillis} for a launch without a profile: -1 for every phase. */
+    static long[] unknownPhaseMillis() {
+        long[] ms = new long[PHASE_LABELS.length];
+        Arrays.fill(ms, -1);
+        return ms;
+    }
+
+    private static long toMillis(long ns) {
+        return ns < 0 ? -1 : ns / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        String s = String.format(Locale.US, "dlopen libminecraftpe.so %.2f ms, dlsym %.3f ms, JNI_OnLoad %.2f ms",
+            dlopenNs / 1e6, dlsymNs / 1e6, onLoadNs / 1e6);
+        if (untilOnCreateNs >= 0) {
+            s += String.format(Locale.US, ", onCreate forwarded after %.1f ms and took %.1f ms",
+                untilOnCreateNs / 1e6, onCreateNs / 1e6);
+        }
+        return failures > 0 ? s + "\n" + errors : s;
+    }
+
+    /**
+     * Called by the launch pipeline once it has appended this launch to the
+     * history. The onCreate timings arrive later, from the Launcher activity,
+     * and are then written into that same record.
+     */
+    static void onLaunchRecorded(Context context) {
+        synchronized (LOCK) {
+            pendingContext = context.getApplicationContext();
+            launchRecorded = true;
+            if (!activityCreated) {
+                return;
+            }
+        }
+        persistOnCreate();
+    }
+
+    /** Called from mc-init.cpp on the UI thread after ANativeActivity_onCreate was forwarded. */
+    @SuppressWarnings("unused")
+    static void onActivityCreated() {
+        synchronized (LOCK) {
+            activityCreated = true;
+            if (!launchRecorded) {
+                return;
+            }
+        }
+        persistOnCreate();
+    }
+
+    private static void persistOnCreate() {
+        final Context context;
+        synchronized (LOCK) {
+            context = pendingContext;
+            pendingContext = null;
+            // Both sides have reported; the next launch in this process starts over
+            launchRecorded = false;
+            activityCreated = false;
+        }
+        if (context == null) {
+            return;
+        }
+        // Off the UI thread: the game is drawing its first frames
+        new Thread(() -> {
+            NativeStartupProfile profile = read();
+            if (profile == null) {
+                return;
+            }
+            LaunchLog.getInstance(context).append("-> Native: " + profile);
+            long[] ms = profile.phaseMillis();
+            int base = LaunchPipeline.Stage.values().length;
+            try {
+                LaunchHistory history = LaunchPipeline.getHistory(context);
+                history.updateLatest(base + PHASE_UNTIL_ONCREATE, ms[PHASE_UNTIL_ONCREATE]);
+                history.updateLatest(base + PHASE_ONCREATE, ms[PHASE_ONCREATE]);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to store native startup timings", e);
+            }
+        }, "native-profile").start();
+    }
+}
@@ -0,0 +1,96 @@
+package com.origin.launcher;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stages a downloaded or selected APK in the background, so that by the time
+ * Launch is pressed the dex files and libraries are already in place and the
+ * launch only has to register paths.
+ */
+public class PreStager {
+    private static final String TAG = "PreStager";
+    /** Budget for all staged versions together, in MB, stored in the "settings" preferences. */
+    public static final String PREF_STAGING_BUDGET_MB = "staging_budget_mb";
+    private static PreStager instance;
+
+    private final Context context;
+    private final ExecutorService executor;
+    private final Set<String> pending = new HashSet<>();
+
+    private PreStager(Context context) {
+        this.context = context.getApplicationContext();
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    public static synchronized PreStager getInstance(Context context) {
+        if (instance == null) {
+            instance = new PreStager(context);
+        }
+        return instance;
+    }
+
+    /** Root of the per-APK staging directories shared with the launch path. */
+    public static File getStagingRoot(Context context) {
+        return new File(context.getCodeCacheDir(), "staging");
+    }
+
+    public static StagingStore newStore(Context context) {
+        long budgetMb = context.getSharedPreferences("settings", 0)
+            .getLong(PREF_STAGING_BUDGET_MB, StagingStore.DEFAULT_BUDGET_BYTES / (1024 * 1024));
+        return new StagingStore(getStagingRoot(context), budgetMb * 1024 * 1024);
+    }
+
+    public static ApkStager newStager(Context context) {
+        return new ApkStager(getStagingRoot(context), Build.SUPPORTED_ABIS[0], StagingEngine.getInstance(),
+            newStore(context));
+    }
+
+    /** Queues a standalone APK for staging; duplicate requests for the same file are dropped. */
+    public void prestage(final File apk) {
+        final String path = apk.getAbsolutePath();
+        synchronized (pending) {
+            if (!pending.add(path)) {
+                return;
+            }
+        }
+        executor.execute(() -> {
+            try {
+                if (!apk.isFile()) {
+                    return;
+                }
+                if (ApkIntegrity.check(apk) == ApkIntegrity.Status.CORRUPT) {
+                    Log.w(TAG, apk.getName() + " does not match its download record, not staging");
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                try (ApkIndex index = ApkIndex.open(apk)) {
+                    if (!index.hasAbi(Build.SUPPORTED_ABIS[0])) {
+                        Log.w(TAG, apk.getName() + " has no " + Build.SUPPORTED_ABIS[0] + " libraries, not staging");
+                        return;
+                    }
+                    // A standalone APK always brings its own libraries
+                    ApkStager.Staged staged = newStager(context).stage(index, index, true, null);
+                    Log.d(TAG, "Pre-staged " + apk.getName() + " in " + (System.currentTimeMillis() - start)
+                        + " ms (dex reused: " + staged.dex.reused + ", libs in APK: " + staged.libsInApk + ")");
+                    if (!staged.evicted.isEmpty()) {
+                        Log.d(TAG, "Evicted staged versions " + staged.evicted);
+                    }
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Pre-staging " + apk.getName() + " failed", e);
+            } finally {
+                synchronized (pending) {
+                    pending.remove(path);
+                }
+            }
+        });
+    }
+}
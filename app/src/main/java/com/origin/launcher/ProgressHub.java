@@ -0,0 +1,187 @@
+package com.origin.launcher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carries download progress from worker threads to the UI without touching
+ * the main looper per chunk. Workers write into their {@link Task} with plain
+ * atomic stores; while any task is open, the main thread reads them all once
+ * per {@link Choreographer} frame, sums them into one {@link Snapshot} and
+ * hands it to the listeners only if it differs from the last one. Frames stop
+ * being requested once the last task has closed and been reported.
+ */
+public class ProgressHub {
+    private static ProgressHub instance;
+
+    /** One transfer's progress, written by its worker and read once per frame. */
+    public static final class Task {
+        private final AtomicLong downloaded;
+        private volatile long total;
+        private volatile long bytesPerSecond = -1;
+
+        Task(long downloaded, long total) {
+            this.downloaded = new AtomicLong(downloaded);
+            this.total = total;
+        }
+
+        public void update(long downloaded, long bytesPerSecond) {
+            this.downloaded.set(downloaded);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /** -1 while the size is not known. */
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public long downloaded() {
+            return downloaded.get();
+        }
+
+        public long bytesPerSecond() {
+            return bytesPerSecond;
+        }
+    }
+
+    /** Every open task together. */
+    public static final class Snapshot {
+        public final int active;
+        public final long downloaded;
+        /** -1 if the size of any task is not known yet. */
+        public final long total;
+        /** Sum over the tasks that have a speed, or -1 if none has. */
+        public final long bytesPerSecond;
+
+        Snapshot(int active, long downloaded, long total, long bytesPerSecond) {
+            this.active = active;
+            this.downloaded = downloaded;
+            this.total = total;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /** Tasks share the link, so the combined speed drains the combined remainder. */
+        public long etaSeconds() {
+            return total > 0 ? TransferRate.etaSeconds(total - downloaded, bytesPerSecond) : -1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Snapshot)) {
+                return false;
+            }
+            Snapshot s = (Snapshot) o;
+            return active == s.active && downloaded == s.downloaded && total == s.total
+                && bytesPerSecond == s.bytesPerSecond;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (31 * (31 * (31 * active + downloaded) + total) + bytesPerSecond);
+        }
+    }
+
+    public interface Listener {
+        /** Called on the main thread, at most once per frame and only on change. */
+        void onProgress(Snapshot snapshot);
+    }
+
+    private final Set<Task> tasks = ConcurrentHashMap.newKeySet();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final Choreographer.FrameCallback frame = this::doFrame;
+    // Main thread only
+    private Snapshot last;
+
+    public static synchronized ProgressHub getInstance() {
+        if (instance == null) {
+            instance = new ProgressHub();
+        }
+        return instance;
+    }
+
+    /** Starts reporting a transfer that is {@code downloaded} bytes in; {@code total} is -1 if unknown. */
+    public Task open(long downloaded, long total) {
+        Task task = new Task(downloaded, total);
+        tasks.add(task);
+        wake();
+        return task;
+    }
+
+    /** Stops reporting {@code task}; closing it again does nothing. */
+    public void close(Task task) {
+        if (task != null && tasks.remove(task)) {
+            wake();
+        }
+    }
+
+    /** Main thread. The listener hears the current progress on the next frame. */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        last = null;
+        wake();
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Requests a frame unless one is already coming. Workers only get here on open and close. */
+    private void wake() {
+        if (frameScheduled.compareAndSet(false, true)) {
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(frame));
+        }
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        Snapshot snapshot = aggregate();
+        if (!snapshot.equals(last)) {
+            last = snapshot;
+            for (Listener l : listeners) {
+                l.onProgress(snapshot);
+            }
+        }
+        if (snapshot.active > 0 && !listeners.isEmpty()) {
+            Choreographer.getInstance().postFrameCallback(frame);
+            return;
+        }
+        frameScheduled.set(false);
+        // A task opened or closed after the read above found the flag still set
+        if (tasks.size() != snapshot.active) {
+            wake();
+        }
+    }
+
+    private Snapshot aggregate() {
+        int active = 0;
+        long downloaded = 0;
+        long total = 0;
+        long bytesPerSecond = 0;
+        boolean sizeUnknown = false;
+        boolean speedKnown = false;
+        for (Task task : tasks) {
+            active++;
+            long taskTotal = task.total;
+            if (taskTotal > 0) {
+                downloaded += task.downloaded();
+                total += taskTotal;
+            } else {
+                sizeUnknown = true;
+            }
+            long speed = task.bytesPerSecond;
+            if (speed > 0) {
+                bytesPerSecond += speed;
+                speedKnown = true;
+            }
+        }
+        return new Snapshot(active, downloaded, sizeUnknown ? -1 : total, speedKnown ? bytesPerSecond : -1);
+    }
+}
@@ -19,6 +19,8 @@ import android.os.Looper;
 public class SettingsFragment extends BaseThemedFragment implements DiscordManager.DiscordLoginCallback {
 
     private EditText packageNameEdit;
+    private EditText stagingBudgetEdit;
+    private EditText versionsBudgetEdit;
     private LinearLayout themesButton;
     private LinearLayout configurationButton;
     private LinearLayout aboutButton; 
@@ -40,6 +42,8 @@ public class SettingsFragment extends BaseThemedFragment implements DiscordManag
         View view = inflater.inflate(R.layout.fragment_settings, container, false);
         
         packageNameEdit = view.findViewById(R.id.mc_pkgname);
+        stagingBudgetEdit = view.findViewById(R.id.staging_budget);
+        versionsBudgetEdit = view.findViewById(R.id.versions_budget);
         
         // Initialize themes and about buttons
         themesButton = view.findViewById(R.id.themes_button);
@@ -80,6 +84,22 @@ public class SettingsFragment extends BaseThemedFragment implements DiscordManag
             }
         });
         
+        // Load and save the staged versions budget the same way
+        long budgetMb = prefs.getLong(PreStager.PREF_STAGING_BUDGET_MB, StagingStore.DEFAULT_BUDGET_BYTES / (1024 * 1024));
+        stagingBudgetEdit.setText(String.valueOf(budgetMb));
+        stagingBudgetEdit.setOnFocusChangeListener((v, hasFocus) -> {
+            if (!hasFocus) {
+                saveStagingBudget();
+            }
+        });
+        long versionsBudgetMb = prefs.getLong(VersionStore.PREF_VERSIONS_BUDGET_MB, VersionStore.DEFAULT_BUDGET_BYTES / (1024 * 1024));
+        versionsBudgetEdit.setText(String.valueOf(versionsBudgetMb));
+        versionsBudgetEdit.setOnFocusChangeListener((v, hasFocus) -> {
+            if (!hasFocus) {
+                saveVersionsBudget();
+            }
+        });
+        
         // Set up button click listeners
         setupButtonListeners();
         
@@ -370,6 +390,32 @@ public class SettingsFragment extends BaseThemedFragment implements DiscordManag
         }
     }
     
+    private void saveStagingBudget() {
+        try {
+            long budgetMb = Long.parseLong(stagingBudgetEdit.getText().toString().trim());
+            if (budgetMb > 0) {
+                SharedPreferences prefs = requireContext().getSharedPreferences("settings", 0);
+                prefs.edit().putLong(PreStager.PREF_STAGING_BUDGET_MB, budgetMb).apply();
+            }
+        } catch (NumberFormatException e) {
+            // Keep the previous budget
+        }
+    }
+    
+    private void saveVersionsBudget() {
+        try {
+            long budgetMb = Long.parseLong(versionsBudgetEdit.getText().toString().trim());
+            if (budgetMb > 0) {
+                SharedPreferences prefs = requireContext().getSharedPreferences("settings", 0);
+                prefs.edit().putLong(VersionStore.PREF_VERSIONS_BUDGET_MB, budgetMb).apply();
+                // A smaller budget takes effect now rather than after the next download
+                VersionStore.getInstance(requireContext()).evictInBackground();
+            }
+        } catch (NumberFormatException e) {
+            // Keep the previous budget
+        }
+    }
+    
     @Override
     public void onResume() {
         super.onResume();
@@ -384,6 +430,8 @@ public class SettingsFragment extends BaseThemedFragment implements DiscordManag
     public void onPause() {
         super.onPause();
         savePackageName();
+        saveStagingBudget();
+        saveVersionsBudget();
         
         // Update Discord RPC when leaving settings
         DiscordRPCHelper.getInstance().updateIdlePresence();
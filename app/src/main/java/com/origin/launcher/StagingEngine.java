@@ -0,0 +1,198 @@
+package com.origin.launcher;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the copy work of one or more staging plans (dex files, native
+ * libraries) concurrently on a pool bounded by the CPU count. Only the
+ * inflate/copy tasks run in parallel; plans are committed afterwards on the
+ * calling thread in the order they were passed, so whatever the caller
+ * registers from the results stays deterministic.
+ */
+public class StagingEngine {
+    private static StagingEngine instance;
+
+    private final ThreadPoolExecutor pool;
+
+    public interface ProgressListener {
+        void onEntryStaged(String name, long bytes, int completed, int total);
+    }
+
+    /** A progress listener that also wants to know when all tasks of a plan are done. */
+    public interface PlanListener extends ProgressListener {
+        void onPlanFinished(Plan plan);
+    }
+
+    /** A single independent unit of staging work, typically one APK entry. */
+    public abstract static class Task {
+        final String name;
+        final long size;
+
+        protected Task(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        protected abstract void run() throws IOException;
+    }
+
+    /** Tasks produced by a stager plus the step that publishes their result. */
+    public abstract static class Plan {
+        protected final List<Task> tasks = new ArrayList<>();
+
+        protected abstract void commit() throws IOException;
+    }
+
+    public StagingEngine(int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "staging-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        // Idle staging threads are released between launches
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized StagingEngine getInstance() {
+        if (instance == null) {
+            instance = new StagingEngine(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        return instance;
+    }
+
+    /**
+     * Runs every task of every plan, then commits the plans in order. On the
+     * first failure tasks not yet started are skipped, the ones already
+     * running are waited for (they read from an index the caller closes once
+     * this returns), nothing is committed and the error is rethrown.
+     */
+    public void run(List<? extends Plan> plans, ProgressListener listener) throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        for (Plan plan : plans) {
+            tasks.addAll(plan.tasks);
+        }
+        // Largest entries first so one big library does not start last and dominate the tail
+        Collections.sort(tasks, new Comparator<Task>() {
+            @Override
+            public int compare(Task a, Task b) {
+                return Long.compare(b.size, a.size);
+            }
+        });
+
+        // Plans finish independently of each other; track how many tasks each one is still waiting on
+        PlanListener planListener = listener instanceof PlanListener ? (PlanListener) listener : null;
+        Map<Task, Plan> owners = new IdentityHashMap<>();
+        Map<Plan, Integer> remaining = new IdentityHashMap<>();
+        for (Plan plan : plans) {
+            for (Task task : plan.tasks) {
+                owners.put(task, plan);
+            }
+            remaining.put(plan, plan.tasks.size());
+            if (planListener != null && plan.tasks.isEmpty()) {
+                planListener.onPlanFinished(plan);
+            }
+        }
+
+        CompletionService<Task> completion = new ExecutorCompletionService<>(pool);
+        final AtomicBoolean failed = new AtomicBoolean();
+        for (final Task task : tasks) {
+            completion.submit(new Callable<Task>() {
+                @Override
+                public Task call() throws Exception {
+                    if (failed.get()) {
+                        return null;
+                    }
+                    task.run();
+                    return task;
+                }
+            });
+        }
+
+        int taken = 0;
+        try {
+            for (int completed = 1; completed <= tasks.size(); completed++) {
+                Future<Task> future = completion.take();
+                taken++;
+                Task done = future.get();
+                if (listener != null) {
+                    listener.onEntryStaged(done.name, done.size, completed, tasks.size());
+                }
+                Plan owner = owners.get(done);
+                int left = remaining.get(owner) - 1;
+                remaining.put(owner, left);
+                if (planListener != null && left == 0) {
+                    planListener.onPlanFinished(owner);
+                }
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            awaitRemaining(completion, tasks.size() - taken);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Staging interrupted");
+        } catch (ExecutionException e) {
+            failed.set(true);
+            awaitRemaining(completion, tasks.size() - taken);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Staging failed", cause);
+        }
+
+        for (Plan plan : plans) {
+            plan.commit();
+        }
+    }
+
+    /** Runs a plan on the calling thread, without the pool. */
+    public static void runSequential(Plan plan) throws IOException {
+        for (Task task : plan.tasks) {
+            task.run();
+        }
+        plan.commit();
+    }
+
+    /**
+     * Waits for {@code count} more tasks to come back, ignoring their results.
+     * Not cancelling: cancel(false) reports a running task done while it keeps
+     * reading, and interrupting a read would close the index channel shared by
+     * all tasks. Tasks still queued see the failure and return at once.
+     */
+    private static void awaitRemaining(CompletionService<Task> completion, int count) {
+        boolean interrupted = false;
+        while (count > 0) {
+            try {
+                completion.take();
+                count--;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.origin.launcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small plain-text manifest shared by the dex and native library staging code.
+ * Header lines ({@code #key=value}) describe the source APK, entry lines
+ * ({@code name=crc:size}) describe each staged file in registration order.
+ * Writes go through a temp file and a rename so a reader never sees a
+ * partially written manifest.
+ */
+class StagingManifest {
+    private static final int VERSION = 1;
+
+    final Map<String, String> header = new LinkedHashMap<>();
+    final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    static class Entry {
+        final long crc;
+        final long size;
+
+        Entry(long crc, long size) {
+            this.crc = crc;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry other = (Entry) o;
+            return crc == other.crc && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (crc ^ (size * 31));
+        }
+    }
+
+    /** Records path, size and mtime of the APK the entries were staged from. */
+    void setApkIdentity(File apk) {
+        header.put("apk", apk.getAbsolutePath());
+        header.put("size", String.valueOf(apk.length()));
+        header.put("mtime", String.valueOf(apk.lastModified()));
+    }
+
+    boolean matchesApkIdentity(File apk) {
+        return apk.getAbsolutePath().equals(header.get("apk"))
+            && String.valueOf(apk.length()).equals(header.get("size"))
+            && String.valueOf(apk.lastModified()).equals(header.get("mtime"));
+    }
+
+    /** Returns true when every entry exists in {@code dir} with its recorded size. */
+    boolean filesPresent(File dir) {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            File staged = new File(dir, e.getKey());
+            if (!staged.isFile() || staged.length() != e.getValue().size) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns null when the file is missing, unreadable or from another format version. */
+    static StagingManifest read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        StagingManifest m = new StagingManifest();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            boolean versionSeen = false;
+            while ((line = reader.readLine()) != null) {
+                int eq = line.indexOf('=');
+                if (eq <= 0) continue;
+                String key = line.substring(0, eq);
+                String value = line.substring(eq + 1);
+                if (key.equals("#version")) {
+                    if (Integer.parseInt(value) != VERSION) return null;
+                    versionSeen = true;
+                } else if (key.startsWith("#")) {
+                    m.header.put(key.substring(1), value);
+                } else {
+                    int colon = value.indexOf(':');
+                    if (colon <= 0) return null;
+                    m.entries.put(key, new Entry(
+                        Long.parseLong(value.substring(0, colon)),
+                        Long.parseLong(value.substring(colon + 1))));
+                }
+            }
+            return versionSeen ? m : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    void write(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmp))) {
+            writer.write("#version=" + VERSION + "\n");
+            for (Map.Entry<String, String> h : header.entrySet()) {
+                writer.write("#" + h.getKey() + "=" + h.getValue() + "\n");
+            }
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writer.write(e.getKey() + "=" + e.getValue().crc + ":" + e.getValue().size + "\n");
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Failed to write " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.origin.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the per-APK staging directories under a byte budget. Each directory
+ * records when it was last staged or launched in a marker file; when the
+ * total grows past the budget, the least recently used directories are
+ * deleted first. Pinned directories (the one about to be launched) are never
+ * evicted, even if they alone exceed the budget.
+ */
+public class StagingStore {
+    public static final long DEFAULT_BUDGET_BYTES = 2048L * 1024 * 1024;
+
+    private static final String LAST_USED_FILE = ".last-used";
+
+    private final File root;
+    private final long budgetBytes;
+
+    public StagingStore(File root, long budgetBytes) {
+        this.root = root;
+        this.budgetBytes = budgetBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public static class Slot {
+        public final String key;
+        public final long bytes;
+        public final long lastUsed;
+
+        Slot(String key, long bytes, long lastUsed) {
+            this.key = key;
+            this.bytes = bytes;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /** Records that the staging directory {@code key} was just used. */
+    public void markUsed(String key) throws IOException {
+        File marker = new File(new File(root, key), LAST_USED_FILE);
+        if (!marker.exists() && !marker.createNewFile()) {
+            throw new IOException("Failed to create " + marker);
+        }
+        marker.setLastModified(System.currentTimeMillis());
+    }
+
+    /** Every staging directory with its size on disk, most recently used first. */
+    public List<Slot> slots() {
+        List<Slot> slots = new ArrayList<>();
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return slots;
+        }
+        for (File dir : dirs) {
+            if (!dir.isDirectory()) {
+                continue;
+            }
+            File marker = new File(dir, LAST_USED_FILE);
+            // Directories from before the marker existed fall back to their own mtime
+            long lastUsed = marker.exists() ? marker.lastModified() : dir.lastModified();
+            slots.add(new Slot(dir.getName(), sizeOf(dir), lastUsed));
+        }
+        Collections.sort(slots, new Comparator<Slot>() {
+            @Override
+            public int compare(Slot a, Slot b) {
+                return Long.compare(b.lastUsed, a.lastUsed);
+            }
+        });
+        return slots;
+    }
+
+    /**
+     * Deletes least recently used directories until the total fits the
+     * budget, skipping {@code pinned} keys. Returns the evicted keys.
+     */
+    public List<String> evict(String... pinned) {
+        Set<String> keep = new HashSet<>(Arrays.asList(pinned));
+        List<Slot> slots = slots();
+        long total = 0;
+        for (Slot slot : slots) {
+            total += slot.bytes;
+        }
+        List<String> evicted = new ArrayList<>();
+        for (int i = slots.size() - 1; i >= 0 && total > budgetBytes; i--) {
+            Slot slot = slots.get(i);
+            if (keep.contains(slot.key)) {
+                continue;
+            }
+            deleteRecursively(new File(root, slot.key));
+            total -= slot.bytes;
+            evicted.add(slot.key);
+        }
+        return evicted;
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
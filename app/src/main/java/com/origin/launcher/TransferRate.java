@@ -0,0 +1,76 @@
+package com.origin.launcher;
+
+/**
+ * Exponentially weighted moving average of a transfer's speed, fed with the
+ * running byte count. Each sample is weighted by the time it covers, so
+ * irregular sampling does not skew the average, and older samples fade with a
+ * time constant of {@link #TIME_CONSTANT_MS}. Also picks the buffer size
+ * that suits a given speed.
+ */
+public class TransferRate {
+    static final long TIME_CONSTANT_MS = 3000;
+    static final int MIN_BUFFER_SIZE = 16 * 1024;
+    static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    /** A full buffer should hold about this much transfer time. */
+    private static final long BUFFER_FILL_MS = 50;
+
+    private long lastBytes = -1;
+    private long lastNanos;
+    // Bytes per second; negative until two samples have been seen
+    private double rate = -1;
+
+    /** Records that {@code bytes} have been transferred so far. A smaller count than before restarts the average. */
+    public synchronized void update(long bytes) {
+        update(bytes, System.nanoTime());
+    }
+
+    synchronized void update(long bytes, long nowNanos) {
+        if (lastBytes < 0 || bytes < lastBytes) {
+            lastBytes = bytes;
+            lastNanos = nowNanos;
+            rate = -1;
+            return;
+        }
+        long elapsed = nowNanos - lastNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        double sample = (bytes - lastBytes) * 1e9 / elapsed;
+        double alpha = 1 - Math.exp(-elapsed / (TIME_CONSTANT_MS * 1e6));
+        rate = rate < 0 ? sample : rate + alpha * (sample - rate);
+        lastBytes = bytes;
+        lastNanos = nowNanos;
+    }
+
+    /** -1 until there are two samples. */
+    public synchronized long bytesPerSecond() {
+        return rate < 0 ? -1 : (long) rate;
+    }
+
+    /** Seconds to transfer {@code remaining} bytes at {@code bytesPerSecond}, or -1 if that is unknown or zero. */
+    public static long etaSeconds(long remaining, long bytesPerSecond) {
+        if (remaining < 0 || bytesPerSecond <= 0) {
+            return -1;
+        }
+        return (remaining + bytesPerSecond - 1) / bytesPerSecond;
+    }
+
+    /**
+     * The power of two between {@link #MIN_BUFFER_SIZE} and
+     * {@link #MAX_BUFFER_SIZE} closest above {@link #BUFFER_FILL_MS} worth of
+     * data. Fast streams write to disk in big batches instead of a call every
+     * few kilobytes; slow ones still hand over their bytes (and their
+     * progress) several times a second, and do not tie up big buffers.
+     */
+    public static int bufferSizeFor(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            return MIN_BUFFER_SIZE;
+        }
+        long wanted = bytesPerSecond * BUFFER_FILL_MS / 1000;
+        int size = MIN_BUFFER_SIZE;
+        while (size < wanted && size < MAX_BUFFER_SIZE) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,124 @@
+package com.origin.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What a probe of a download URL found out: where its redirects end, the
+ * size, the ETag and whether Range requests work. Kept per source URL for a
+ * limited time in a small tab-separated file, so a retry, a resume or the
+ * next download of the same version starts with one request to the final URL
+ * instead of a redirect walk and a probe.
+ */
+public class UrlMetadataCache {
+    /** Short enough that signed CDN redirects have usually not expired yet. */
+    public static final long DEFAULT_TTL_MS = 30 * 60 * 1000L;
+    private static final int MAX_ENTRIES = 64;
+
+    private final File file;
+    private final long ttlMs;
+    // Guarded by this; oldest first
+    private Map<String, Entry> entries;
+
+    public static class Entry {
+        public final String finalUrl;
+        /** -1 when the server did not say. */
+        public final long total;
+        /** Null when the server sent none. */
+        public final String etag;
+        public final boolean rangesSupported;
+        public final long fetchedAt;
+
+        public Entry(String finalUrl, long total, String etag, boolean rangesSupported, long fetchedAt) {
+            this.finalUrl = finalUrl;
+            this.total = total;
+            this.etag = etag;
+            this.rangesSupported = rangesSupported;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    public UrlMetadataCache(File file, long ttlMs) {
+        this.file = file;
+        this.ttlMs = ttlMs;
+    }
+
+    /** The entry for {@code sourceUrl} if it is younger than the TTL, otherwise null. */
+    public synchronized Entry get(String sourceUrl) {
+        Entry e = load().get(sourceUrl);
+        if (e == null) {
+            return null;
+        }
+        long age = System.currentTimeMillis() - e.fetchedAt;
+        return age >= 0 && age < ttlMs ? e : null;
+    }
+
+    public synchronized void put(String sourceUrl, Entry entry) {
+        Map<String, Entry> map = load();
+        map.remove(sourceUrl);
+        map.put(sourceUrl, entry);
+        while (map.size() > MAX_ENTRIES) {
+            map.remove(map.keySet().iterator().next());
+        }
+        save();
+    }
+
+    /** Forgets {@code sourceUrl}, e.g. after its final URL stopped working. */
+    public synchronized void remove(String sourceUrl) {
+        if (load().remove(sourceUrl) != null) {
+            save();
+        }
+    }
+
+    private Map<String, Entry> load() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // source, final URL, total, ETag, ranges, fetched at
+                String[] f = line.split("\t", -1);
+                if (f.length != 6) {
+                    continue;
+                }
+                try {
+                    entries.put(f[0], new Entry(f[1], Long.parseLong(f[2]), f[3].isEmpty() ? null : f[3],
+                        f[4].equals("1"), Long.parseLong(f[5])));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private void save() {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (Writer writer = new FileWriter(tmp)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry v = e.getValue();
+                writer.write(e.getKey() + "\t" + v.finalUrl + "\t" + v.total + "\t" + (v.etag != null ? v.etag : "")
+                    + "\t" + (v.rangesSupported ? "1" : "0") + "\t" + v.fetchedAt + "\n");
+            }
+        } catch (IOException e) {
+            // Only a cache: the next download probes again
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package com.origin.launcher;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The downloaded versions, stored by content: every APK lives once, as
+ * versions/blobs/&lt;sha256&gt;.apk, and versions/index.json maps each title,
+ * URL and ETag it was downloaded under to its blob. Two titles of the same
+ * build share one file, a version that is already here is never downloaded
+ * again, and titles whose digits happen to match no longer overwrite each
+ * other. Downloads land in versions/incoming/ and are moved in by
+ * {@link #add}. APKs from before the store (versions/&lt;digits&gt;.apk) are
+ * moved into it in the background on first use.
+ *
+ * The blobs are kept under a byte budget the same way {@link StagingStore}
+ * keeps staged versions: each records its last launch in a marker file, and
+ * once the total grows past the budget the least recently launched are
+ * deleted first. The selected version is never evicted.
+ */
+public class VersionStore {
+    private static final String TAG = "VersionStore";
+    private static final String APK_SUFFIX = ".apk";
+    private static final String LAST_LAUNCHED_SUFFIX = ".last-launched";
+
+    /** Budget for all downloaded versions together, in MB, stored in the "settings" preferences. */
+    public static final String PREF_VERSIONS_BUDGET_MB = "versions_budget_mb";
+    public static final long DEFAULT_BUDGET_BYTES = 3072L * 1024 * 1024;
+
+    private static VersionStore instance;
+
+    private final Context context;
+    private final File root;
+    private final File blobs;
+    private final File incoming;
+    private final File indexFile;
+    private final long createdAt = System.currentTimeMillis();
+    // Adoption and eviction both delete and move blobs; one thread keeps them in order
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "version-store");
+        t.setDaemon(true);
+        return t;
+    });
+    // Guarded by this; one row per title or URL a blob was stored under, oldest first
+    private final List<Alias> aliases = new ArrayList<>();
+
+    /** One name a blob is known by. Rows adopted from before the store only have the old file name. */
+    private static final class Alias {
+        final String sha256;
+        final String title;
+        final String url;
+        final String etag;
+        final String legacyName;
+        final long added;
+
+        Alias(String sha256, String title, String url, String etag, String legacyName, long added) {
+            this.sha256 = sha256;
+            this.title = title;
+            this.url = url;
+            this.etag = etag;
+            this.legacyName = legacyName;
+            this.added = added;
+        }
+    }
+
+    private VersionStore(Context context) {
+        this.context = context;
+        this.root = new File(context.getExternalFilesDir(null), "versions");
+        this.blobs = new File(root, "blobs");
+        this.incoming = new File(root, "incoming");
+        this.indexFile = new File(root, "index.json");
+        load();
+        executor.execute(this::adoptLegacyFiles);
+    }
+
+    /** One stored APK with its size and when it was last launched. */
+    public static class Slot {
+        public final File apk;
+        public final String title;
+        public final long bytes;
+        public final long lastUsed;
+
+        Slot(File apk, String title, long bytes, long lastUsed) {
+            this.apk = apk;
+            this.title = title;
+            this.bytes = bytes;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    public static synchronized VersionStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new VersionStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Where a download of {@code url} should be written before {@link #add} takes it in. */
+    public File downloadTarget(String url) {
+        return new File(incoming, sha256Hex(url.getBytes(StandardCharsets.UTF_8)).substring(0, 16) + APK_SUFFIX);
+    }
+
+    /**
+     * The stored APK downloaded from {@code url}, or else under {@code title},
+     * or null if there is none or it has been damaged since. Cheap enough for
+     * the UI thread.
+     */
+    public synchronized File find(String title, String url) {
+        String legacy = title != null ? legacyName(title) : null;
+        Alias byUrl = null;
+        Alias byTitle = null;
+        Alias byLegacyName = null;
+        for (Alias a : aliases) {
+            if (url != null && url.equals(a.url)) {
+                byUrl = a;
+            } else if (title != null && title.equals(a.title)) {
+                byTitle = a;
+            } else if (legacy != null && a.title == null && legacy.equals(a.legacyName)) {
+                byLegacyName = a;
+            }
+        }
+        Alias match = byUrl != null ? byUrl : byTitle != null ? byTitle : byLegacyName;
+        return match != null ? intactBlob(match.sha256) : null;
+    }
+
+    /**
+     * The stored APK that was served with this strong ETag and size, so a
+     * version listed under a new title or URL is not fetched again. Null for
+     * weak or missing ETags.
+     */
+    public synchronized File findByEtag(String etag, long size) {
+        if (etag == null || etag.startsWith("W/") || size <= 0) {
+            return null;
+        }
+        for (Alias a : aliases) {
+            if (etag.equals(a.etag)) {
+                File blob = intactBlob(a.sha256);
+                if (blob != null && blob.length() == size) {
+                    return blob;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** The title a blob was last stored under, or null if it has none. */
+    public synchronized String titleOf(File apk) {
+        String sha = shaOf(apk);
+        String title = null;
+        for (Alias a : aliases) {
+            if (a.sha256.equals(sha) && a.title != null) {
+                title = a.title;
+            }
+        }
+        return title;
+    }
+
+    /** Every stored APK, including any the index lost track of. */
+    public List<File> blobs() {
+        List<File> files = new ArrayList<>();
+        File[] list = blobs.listFiles();
+        if (list != null) {
+            for (File f : list) {
+                if (f.isFile() && f.getName().endsWith(APK_SUFFIX)) {
+                    files.add(f);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Takes in a finished download: moves it to its blob, or deletes it if
+     * the same content is already stored, and records {@code title},
+     * {@code url} and {@code etag} for it. Returns the blob. The selection is
+     * moved along if it pointed at {@code apk}.
+     */
+    public File add(File apk, String title, String url, String etag) throws IOException {
+        // Downloads come with a record; only an APK from elsewhere costs a hash
+        String sha = ApkIntegrity.recordedSha256(apk);
+        if (sha == null) {
+            sha = ApkIntegrity.StreamingDigest.resume(apk).finish();
+        }
+        File blob;
+        synchronized (this) {
+            blob = moveToBlob(apk, sha);
+            addAlias(sha, title, url, etag);
+        }
+        repointSelection(apk, blob);
+        return blob;
+    }
+
+    /** Records that the stored {@code blob} is also known by {@code title}, {@code url} and {@code etag}. */
+    public synchronized void addAlias(File blob, String title, String url, String etag) {
+        String sha = shaOf(blob);
+        if (sha != null) {
+            addAlias(sha, title, url, etag);
+        }
+    }
+
+    /** Records that the stored {@code apk} was just launched. Not a stored APK: nothing to record. */
+    public void markLaunched(File apk) {
+        String sha = shaOf(apk);
+        if (sha == null) {
+            return;
+        }
+        File marker = markerFile(sha);
+        try {
+            if (!marker.exists() && !marker.createNewFile()) {
+                throw new IOException("Failed to create " + marker);
+            }
+            marker.setLastModified(System.currentTimeMillis());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to record launch of " + apk.getName(), e);
+        }
+    }
+
+    public long getBudgetBytes() {
+        return context.getSharedPreferences("settings", 0)
+            .getLong(PREF_VERSIONS_BUDGET_MB, DEFAULT_BUDGET_BYTES / (1024 * 1024)) * 1024 * 1024;
+    }
+
+    /** Every stored APK with its size, most recently launched first. */
+    public synchronized List<Slot> slots() {
+        List<Slot> slots = new ArrayList<>();
+        for (File blob : blobs()) {
+            String sha = shaOf(blob);
+            File marker = markerFile(sha);
+            // Never launched: the blob's own mtime is when it was downloaded
+            long lastUsed = marker.exists() ? marker.lastModified() : blob.lastModified();
+            slots.add(new Slot(blob, titleOf(blob), blob.length(), lastUsed));
+        }
+        Collections.sort(slots, new Comparator<Slot>() {
+            @Override
+            public int compare(Slot a, Slot b) {
+                return Long.compare(b.lastUsed, a.lastUsed);
+            }
+        });
+        return slots;
+    }
+
+    /**
+     * Deletes least recently launched APKs until the total fits the budget,
+     * skipping the selected version and {@code pinned}. Returns the evicted
+     * files.
+     */
+    public synchronized List<File> evict(File... pinned) {
+        Set<File> keep = new HashSet<>(Arrays.asList(pinned));
+        String selected = context.getSharedPreferences("selected_apk", 0).getString("apk_path", null);
+        if (selected != null) {
+            keep.add(new File(selected));
+        }
+        long budgetBytes = getBudgetBytes();
+        List<Slot> slots = slots();
+        long total = 0;
+        for (Slot slot : slots) {
+            total += slot.bytes;
+        }
+        List<File> evicted = new ArrayList<>();
+        for (int i = slots.size() - 1; i >= 0 && total > budgetBytes; i--) {
+            Slot slot = slots.get(i);
+            if (keep.contains(slot.apk)) {
+                continue;
+            }
+            String sha = shaOf(slot.apk);
+            if (!slot.apk.delete() && slot.apk.exists()) {
+                Log.w(TAG, "Failed to evict " + slot.apk.getName());
+                continue;
+            }
+            ApkIntegrity.deleteRecord(slot.apk);
+            markerFile(sha).delete();
+            forget(sha);
+            total -= slot.bytes;
+            evicted.add(slot.apk);
+            Log.d(TAG, "Evicted " + (slot.title != null ? slot.title : slot.apk.getName())
+                + " (" + slot.bytes / (1024 * 1024) + " MB)");
+        }
+        return evicted;
+    }
+
+    /** Runs {@link #evict} off the calling thread, after any adoption still in progress. */
+    public void evictInBackground(final File... pinned) {
+        executor.execute(() -> evict(pinned));
+    }
+
+    /** One line per stored version: size and last launch, the selected one marked. */
+    public String summarize() {
+        List<Slot> slots = slots();
+        String selected = context.getSharedPreferences("selected_apk", 0).getString("apk_path", null);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        long total = 0;
+        for (Slot slot : slots) {
+            total += slot.bytes;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "Stored versions: %d MB of %d MB", total / (1024 * 1024),
+            getBudgetBytes() / (1024 * 1024)));
+        for (Slot slot : slots) {
+            String name = slot.title != null ? slot.title : untitledName(slot.apk);
+            boolean isSelected = slot.apk.getAbsolutePath().equals(selected);
+            sb.append(String.format(Locale.US, "\n%s %-20s %5d MB  %s", isSelected ? "*" : " ", name,
+                slot.bytes / (1024 * 1024), format.format(new Date(slot.lastUsed))));
+        }
+        return sb.toString();
+    }
+
+    /** A blob's hash is too long to list; files the index never knew keep their name. */
+    private static String untitledName(File apk) {
+        String name = apk.getName();
+        boolean sha256Name = name.length() == 64 + APK_SUFFIX.length() && name.endsWith(APK_SUFFIX)
+            && name.substring(0, 64).matches("[0-9a-f]+");
+        return sha256Name ? name.substring(0, 12) : name;
+    }
+
+    /** Caller holds the lock. */
+    private void addAlias(String sha, String title, String url, String etag) {
+        Iterator<Alias> it = aliases.iterator();
+        while (it.hasNext()) {
+            Alias a = it.next();
+            // The title or URL now stands for this content
+            if ((url != null && url.equals(a.url)) || (title != null && title.equals(a.title))) {
+                it.remove();
+            }
+        }
+        aliases.add(new Alias(sha, title, url, etag, null, System.currentTimeMillis()));
+        save();
+    }
+
+    /** Caller holds the lock. */
+    private File moveToBlob(File apk, String sha) throws IOException {
+        File blob = blobFile(sha);
+        if (blob.isFile() && ApkIntegrity.quickCheck(blob) != ApkIntegrity.Status.CORRUPT) {
+            // Also the case when adopting old files got to this download first
+            Log.d(TAG, apk.getName() + " is already stored as " + blob.getName());
+            Files.deleteIfExists(apk.toPath());
+        } else {
+            if (!blobs.isDirectory() && !blobs.mkdirs()) {
+                throw new IOException("Failed to create " + blobs);
+            }
+            Files.move(apk.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            // The rename kept the mtime, so the record stays valid under the new name
+            ApkIntegrity.writeRecord(blob, sha);
+        }
+        ApkIntegrity.deleteRecord(apk);
+        return blob;
+    }
+
+    private File blobFile(String sha) {
+        return new File(blobs, sha + APK_SUFFIX);
+    }
+
+    private File markerFile(String sha) {
+        return new File(blobs, sha + LAST_LAUNCHED_SUFFIX);
+    }
+
+    /** Caller holds the lock. Null if missing or damaged; rows for a missing blob are dropped. */
+    private File intactBlob(String sha) {
+        File blob = blobFile(sha);
+        if (!blob.isFile()) {
+            forget(sha);
+            return null;
+        }
+        return ApkIntegrity.quickCheck(blob) != ApkIntegrity.Status.CORRUPT ? blob : null;
+    }
+
+    /** Caller holds the lock. */
+    private void forget(String sha) {
+        Iterator<Alias> it = aliases.iterator();
+        boolean changed = false;
+        while (it.hasNext()) {
+            if (it.next().sha256.equals(sha)) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    private String shaOf(File apk) {
+        String name = apk.getName();
+        return apk.getParentFile() != null && apk.getParentFile().equals(blobs) && name.endsWith(APK_SUFFIX)
+            ? name.substring(0, name.length() - APK_SUFFIX.length()) : null;
+    }
+
+    /** The selected version is stored as a path; a version that moved into the store takes it along. */
+    private void repointSelection(File from, File to) {
+        SharedPreferences prefs = context.getSharedPreferences("selected_apk", 0);
+        if (from.getAbsolutePath().equals(prefs.getString("apk_path", null))) {
+            prefs.edit().putString("apk_path", to.getAbsolutePath()).apply();
+        }
+    }
+
+    /**
+     * Moves versions/&lt;digits&gt;.apk files from before the store into it.
+     * Their titles are unknown; {@link #find} matches them by the digits of a
+     * title, as they were named, until a download records a real title.
+     */
+    private void adoptLegacyFiles() {
+        File[] files = root.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            // A download restored from before the store that finished since is taken in by add()
+            if (!f.isFile() || !name.endsWith(APK_SUFFIX) || f.lastModified() >= createdAt) {
+                continue;
+            }
+            try {
+                if (ApkIntegrity.quickCheck(f) == ApkIntegrity.Status.CORRUPT) {
+                    continue;
+                }
+                // Hashed outside the lock: lookups from the UI must not wait for it
+                String sha = ApkIntegrity.recordedSha256(f);
+                if (sha == null) {
+                    sha = ApkIntegrity.StreamingDigest.resume(f).finish();
+                }
+                File blob;
+                synchronized (this) {
+                    if (!f.isFile()) {
+                        continue;
+                    }
+                    blob = moveToBlob(f, sha);
+                    String legacy = name.substring(0, name.length() - APK_SUFFIX.length());
+                    aliases.add(new Alias(sha, null, null, null, legacy, blob.lastModified()));
+                    save();
+                }
+                repointSelection(f, blob);
+                Log.d(TAG, "Moved " + name + " into the store as " + blob.getName());
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to move " + name + " into the store", e);
+            }
+        }
+    }
+
+    /** The name the versions screens gave a title's APK before the store: its digits, e.g. 121100. */
+    private static String legacyName(String title) {
+        String digits = title.replaceAll("[^0-9]", "");
+        return digits.isEmpty() ? null : digits;
+    }
+
+    private static String sha256Hex(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized void load() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                aliases.add(new Alias(o.getString("sha256"), o.optString("title", null), o.optString("url", null),
+                    o.optString("etag", null), o.optString("legacy_name", null), o.optLong("added", 0)));
+            }
+        } catch (IOException | JSONException e) {
+            // The blobs are still there; downloads re-add their titles
+            Log.w(TAG, "Discarding unreadable version index", e);
+            aliases.clear();
+        }
+    }
+
+    /** Caller holds the lock. Written through a temp file so a crash never leaves half an index. */
+    private void save() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Alias a : aliases) {
+                JSONObject o = new JSONObject();
+                o.put("sha256", a.sha256);
+                o.putOpt("title", a.title);
+                o.putOpt("url", a.url);
+                o.putOpt("etag", a.etag);
+                o.putOpt("legacy_name", a.legacyName);
+                o.put("added", a.added);
+                array.put(o);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to serialise version index", e);
+            return;
+        }
+        root.mkdirs();
+        File tmp = new File(indexFile.getAbsolutePath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save version index", e);
+            return;
+        }
+        if (!tmp.renameTo(indexFile)) {
+            tmp.delete();
+        }
+    }
+}
@@ -154,12 +154,10 @@ public class VersionsBetaFragment extends BaseThemedFragment {
         downloadBtn.setCornerRadius((int) (28 * getResources().getDisplayMetrics().density));
         // Apply theme like Home fragment does
         ThemeUtils.applyThemeToButton(downloadBtn, requireContext());
-        // Check if APK already exists and show appropriate button
-        String fileName = buildApkFileNameFromTitle(title);
-        File versionsDir = new File(requireContext().getExternalFilesDir(null), "versions");
-        File apkFile = new File(versionsDir, fileName);
-        
-        if (apkFile.exists()) {
+        // Check if this version is already stored and show appropriate button
+        // (a file that no longer matches its download record is offered for download again)
+        File apkFile = VersionStore.getInstance(requireContext()).find(title, url);
+        if (apkFile != null) {
             downloadBtn.setText("Select");
             downloadBtn.setOnClickListener(v -> selectApk(apkFile, title));
         } else {
@@ -194,248 +192,10 @@ public class VersionsBetaFragment extends BaseThemedFragment {
     }
 
     private void startDownload(String url, String title) {
-        View root = getView();
-        if (root == null) return;
-        LinearProgressIndicator progress = root.findViewById(R.id.download_progress_beta);
-        new Thread(() -> {
-            boolean ok = false;
-            try {
-                String fileName = buildApkFileNameFromTitle(title);
-                File versionsDir = new File(requireContext().getExternalFilesDir(null), "versions");
-                if (!versionsDir.exists()) versionsDir.mkdirs();
-                File outFile = new File(versionsDir, fileName);
-                long total = fetchContentLength(url);
-                int max = (total > 0 && total <= Integer.MAX_VALUE) ? (int) total : -1;
-                if (getActivity() instanceof MainActivity) {
-                    final int finalMax = max;
-                    requireActivity().runOnUiThread(() -> ((MainActivity) getActivity()).showGlobalProgress(finalMax));
-                }
-                downloadToFileWithProgressResumable(url, outFile, total);
-                ok = true;
-            } catch (Exception ex) {
-                Log.e("VersionsBeta", "Download failed", ex);
-            }
-            boolean finalOk = ok;
-            requireActivity().runOnUiThread(() -> {
-                if (getActivity() instanceof MainActivity) {
-                    ((MainActivity) getActivity()).hideGlobalProgress();
-                }
-                Toast.makeText(requireContext(), finalOk ? "Downloaded" : "Download failed", Toast.LENGTH_SHORT).show();
-            });
-        }).start();
-    }
-
-    private long fetchContentLength(String urlStr) {
-        try {
-            java.net.HttpURLConnection conn = openConnectionFollowingRedirects(urlStr, 5);
-            long len = conn.getContentLengthLong();
-            conn.disconnect();
-            return len;
-        } catch (Exception ignored) {}
-        return -1;
-    }
-
-    private String buildApkFileNameFromTitle(String title) {
-        String version = title.replaceAll("[^0-9\\.]", "");
-        version = version.replace(".", "");
-        if (version.isEmpty()) version = String.valueOf(System.currentTimeMillis());
-        return version + ".apk";
-    }
-
-    private void downloadToFile(String urlStr, File outFile) throws Exception {
-        java.net.HttpURLConnection conn = null;
-        try {
-            conn = openConnectionFollowingRedirects(urlStr, 5);
-            int code = conn.getResponseCode();
-            if (code != java.net.HttpURLConnection.HTTP_OK && code != java.net.HttpURLConnection.HTTP_PARTIAL) {
-                throw new Exception("HTTP " + code);
-            }
-            File parent = outFile.getParentFile();
-            if (parent != null && !parent.exists()) parent.mkdirs();
-            try (java.io.InputStream in = conn.getInputStream();
-                 java.io.FileOutputStream out = new java.io.FileOutputStream(outFile)) {
-                byte[] buf = new byte[8192];
-                int r;
-                while ((r = in.read(buf)) != -1) {
-                    out.write(buf, 0, r);
-                }
-            }
-        } finally {
-            if (conn != null) conn.disconnect();
-        }
-    }
-
-    private void downloadToFileWithProgress(String urlStr, File outFile, long total, LinearProgressIndicator localProgress) throws Exception {
-        java.net.HttpURLConnection conn = null;
-        try {
-            conn = openConnectionFollowingRedirects(urlStr, 5);
-            int code = conn.getResponseCode();
-            if (code != java.net.HttpURLConnection.HTTP_OK && code != java.net.HttpURLConnection.HTTP_PARTIAL) {
-                throw new Exception("HTTP " + code);
-            }
-            File parent = outFile.getParentFile();
-            if (parent != null && !parent.exists()) parent.mkdirs();
-            try (java.io.BufferedInputStream in = new java.io.BufferedInputStream(conn.getInputStream(), 262144);
-                 java.io.BufferedOutputStream out = new java.io.BufferedOutputStream(new java.io.FileOutputStream(outFile), 262144)) {
-                byte[] buf = new byte[262144];
-                int r;
-                long read = 0;
-                int lastPct = -1;
-                long lastTs = 0;
-                while ((r = in.read(buf)) != -1) {
-                    out.write(buf, 0, r);
-                    read += r;
-                    if (total > 0) {
-                        int value = (int) Math.min(Integer.MAX_VALUE, read);
-                        long now = System.currentTimeMillis();
-                        if (value != lastPct && (now - lastTs) > 150) {
-                            lastPct = value;
-                            lastTs = now;
-                            if (getActivity() instanceof MainActivity) {
-                                int finalValue = value;
-                                requireActivity().runOnUiThread(() -> ((MainActivity) getActivity()).updateGlobalProgress(finalValue));
-                            }
-                        }
-                    }
-                }
-                out.flush();
-            }
-        } finally {
-            if (conn != null) conn.disconnect();
-        }
-    }
-
-    private void downloadToFileWithProgressResumable(String urlStr, File outFile, long total) throws Exception {
-        File parent = outFile.getParentFile();
-        if (parent != null && !parent.exists()) parent.mkdirs();
-        File tmp = new File(outFile.getAbsolutePath() + ".part");
-        int maxRetries = 3;
-        int attempt = 0;
-        long downloaded = tmp.exists() ? tmp.length() : 0;
-        long contentLength = total;
-
-        while (attempt < maxRetries) {
-            attempt++;
-            java.net.HttpURLConnection conn = null;
-            try {
-                conn = openConnectionFollowingRedirects(urlStr, 5);
-                java.net.URL finalUrl = new java.net.URL(conn.getURL().toString());
-                conn.disconnect();
-                conn = (java.net.HttpURLConnection) finalUrl.openConnection();
-                conn.setInstanceFollowRedirects(true);
-                conn.setConnectTimeout(15000);
-                conn.setReadTimeout(45000);
-                conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Android) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124 Mobile Safari/537.36");
-                conn.setRequestProperty("Accept", "*/*");
-                conn.setRequestProperty("Accept-Encoding", "identity");
-                conn.setRequestProperty("Connection", "close");
-
-                if (downloaded > 0) {
-                    conn.setRequestProperty("Range", "bytes=" + downloaded + "-");
-                }
-                conn.connect();
-
-                int code = conn.getResponseCode();
-                if (code != java.net.HttpURLConnection.HTTP_OK && code != java.net.HttpURLConnection.HTTP_PARTIAL) {
-                    throw new Exception("HTTP " + code);
-                }
-
-                if (code == java.net.HttpURLConnection.HTTP_OK && downloaded > 0) {
-                    downloaded = 0;
-                    if (tmp.exists()) tmp.delete();
-                }
-
-                if (contentLength <= 0) {
-                    long lenHeader = conn.getHeaderFieldLong("Content-Length", -1);
-                    if (lenHeader > 0 && downloaded > 0) {
-                        contentLength = downloaded + lenHeader;
-                    } else if (lenHeader > 0) {
-                        contentLength = lenHeader;
-                    }
-                    if (getActivity() instanceof MainActivity) {
-                        final int max = (contentLength > 0 && contentLength <= Integer.MAX_VALUE) ? (int) contentLength : -1;
-                        requireActivity().runOnUiThread(() -> ((MainActivity) getActivity()).showGlobalProgress(max));
-                    }
-                }
-
-                try (java.io.BufferedInputStream in = new java.io.BufferedInputStream(conn.getInputStream(), 131072);
-                     java.io.BufferedOutputStream out = new java.io.BufferedOutputStream(new java.io.FileOutputStream(tmp, true), 131072)) {
-                    byte[] buf = new byte[131072];
-                    int r;
-                    long lastReportBytes = downloaded;
-                    long lastTs = System.currentTimeMillis();
-                    while ((r = in.read(buf)) != -1) {
-                        out.write(buf, 0, r);
-                        downloaded += r;
-                        if (contentLength > 0 && getActivity() instanceof MainActivity) {
-                            long now = System.currentTimeMillis();
-                            if (downloaded - lastReportBytes >= 256 * 1024 || (now - lastTs) > 200) {
-                                lastReportBytes = downloaded;
-                                lastTs = now;
-                                int value = (int) Math.min(Integer.MAX_VALUE, downloaded);
-                                int finalValue = value;
-                                requireActivity().runOnUiThread(() -> ((MainActivity) getActivity()).updateGlobalProgress(finalValue));
-                            }
-                        }
-                    }
-                    out.flush();
-                }
-
-                if (tmp.renameTo(outFile)) {
-                    return;
-                } else {
-                    try (java.io.FileInputStream fis = new java.io.FileInputStream(tmp);
-                         java.io.FileOutputStream fos = new java.io.FileOutputStream(outFile)) {
-                        byte[] cbuf = new byte[131072];
-                        int cr;
-                        while ((cr = fis.read(cbuf)) != -1) {
-                            fos.write(cbuf, 0, cr);
-                        }
-                    }
-                    tmp.delete();
-                    return;
-                }
-            } catch (Exception ex) {
-                if (attempt >= maxRetries) {
-                    throw ex;
-                }
-                try { Thread.sleep(1000L * attempt); } catch (InterruptedException ignored) {}
-            } finally {
-                if (conn != null) conn.disconnect();
-            }
-        }
-        throw new Exception("Failed to download after retries");
-    }
-
-    private java.net.HttpURLConnection openConnectionFollowingRedirects(String urlStr, int maxRedirects) throws Exception {
-        String current = urlStr;
-        for (int i = 0; i < maxRedirects; i++) {
-            java.net.URL url = new java.net.URL(current);
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-            conn.setInstanceFollowRedirects(false);
-            conn.setConnectTimeout(15000);
-            conn.setReadTimeout(45000);
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Android) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124 Mobile Safari/537.36");
-            conn.setRequestProperty("Accept", "*/*");
-            conn.setRequestProperty("Accept-Encoding", "identity");
-            conn.connect();
-            int code = conn.getResponseCode();
-            if (code == java.net.HttpURLConnection.HTTP_MOVED_PERM || code == java.net.HttpURLConnection.HTTP_MOVED_TEMP || code == java.net.HttpURLConnection.HTTP_SEE_OTHER || code == 307 || code == 308) {
-                String loc = conn.getHeaderField("Location");
-                conn.disconnect();
-                if (loc == null) throw new Exception("Redirect without Location");
-                if (!loc.startsWith("http")) {
-                    java.net.URL base = url;
-                    java.net.URL newUrl = new java.net.URL(base, loc);
-                    current = newUrl.toString();
-                } else {
-                    current = loc;
-                }
-                continue;
-            }
-            return conn;
-        }
-        throw new Exception("Too many redirects");
+        File outFile = VersionStore.getInstance(requireContext()).downloadTarget(url);
+        // Owned by DownloadManager, so leaving this screen does not stop it; MainActivity shows the progress
+        DownloadManager.getInstance(requireContext()).enqueue(url, title, outFile);
+        Toast.makeText(requireContext(), "Download queued", Toast.LENGTH_SHORT).show();
     }
 
     private void selectApk(File apkFile, String title) {
@@ -443,6 +203,8 @@ public class VersionsBetaFragment extends BaseThemedFragment {
             // Store the selected APK path in SharedPreferences for the launcher to use
             android.content.SharedPreferences prefs = requireContext().getSharedPreferences("selected_apk", android.content.Context.MODE_PRIVATE);
             prefs.edit().putString("apk_path", apkFile.getAbsolutePath()).apply();
+            // Stage dex files and libraries now so pressing Launch only has to register them
+            PreStager.getInstance(requireContext()).prestage(apkFile);
             
             Toast.makeText(requireContext(), "Selected: " + title, Toast.LENGTH_SHORT).show();
         } catch (Exception e) {
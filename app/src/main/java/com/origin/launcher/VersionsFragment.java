@@ -6,6 +6,7 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.fragment.app.Fragment;
 import android.util.Log;
@@ -20,10 +21,12 @@ public class VersionsFragment extends BaseThemedFragment {
     private TabLayout tabLayout;
     private ViewPager2 viewPager;
     private VersionsTabAdapter tabAdapter;
+    private TextView versionsSummary;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_versions, container, false);
+        versionsSummary = view.findViewById(R.id.versions_summary);
         
         initializeTabs(view);
         
@@ -58,6 +61,17 @@ public class VersionsFragment extends BaseThemedFragment {
     public void onResume() {
         super.onResume();
         DiscordRPCHelper.getInstance().updateMenuPresence("version manager");
+        updateVersionsSummary();
+    }
+    
+    private void updateVersionsSummary() {
+        VersionStore store = VersionStore.getInstance(requireContext());
+        if (store.blobs().isEmpty()) {
+            versionsSummary.setVisibility(View.GONE);
+        } else {
+            versionsSummary.setText(store.summarize());
+            versionsSummary.setVisibility(View.VISIBLE);
+        }
     }
     
     @Override
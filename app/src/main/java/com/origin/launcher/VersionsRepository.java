@@ -8,15 +8,16 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
 public class VersionsRepository {
     private static final String TAG = "VersionsRepository";
     private static final String REMOTE_URL = "https://raw.githubusercontent.com/Xelo-Client/cdn/refs/heads/main/results.txt";
@@ -39,7 +40,7 @@ public class VersionsRepository {
         // Try refresh cache; if fails, fall back to cached file
         File cacheFile = new File(context.getCacheDir(), CACHE_FILE_NAME);
         try {
-            List<String> lines = downloadLines();
+            List<String> lines = downloadLines(LauncherHttpClient.getInstance(context).client());
             Log.d(TAG, "Downloaded " + lines.size() + " lines");
             if (!lines.isEmpty()) {
                 writeCache(cacheFile, lines);
@@ -76,37 +77,23 @@ public class VersionsRepository {
         }
     }
 
-    private List<String> downloadLines() throws Exception {
-        HttpURLConnection connection = null;
+    /** Served from the shared client's HTTP cache while GitHub says the list is fresh. */
+    private List<String> downloadLines(OkHttpClient client) throws Exception {
         List<String> result = new ArrayList<>();
-        try {
-            URL url = new URL(REMOTE_URL);
-            Log.d(TAG, "Connecting to: " + url);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(15000);
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Linux; Android 10; SM-G975F) AppleWebKit/537.36");
-            connection.connect();
-            int code = connection.getResponseCode();
-            Log.d(TAG, "HTTP response code: " + code);
+        Request request = new Request.Builder().url(REMOTE_URL).build();
+        Log.d(TAG, "Connecting to: " + REMOTE_URL);
+        try (Response response = client.newCall(request).execute()) {
+            int code = response.code();
+            Log.d(TAG, "HTTP response code: " + code + (response.cacheResponse() != null ? " (cached)" : ""));
             if (code != 200) {
-                // Try to read error response
-                try (InputStream errorStream = connection.getErrorStream();
-                     BufferedReader errorReader = new BufferedReader(new InputStreamReader(errorStream))) {
-                    StringBuilder errorResponse = new StringBuilder();
-                    String errorLine;
-                    while ((errorLine = errorReader.readLine()) != null) {
-                        errorResponse.append(errorLine).append("\n");
-                    }
-                    Log.e(TAG, "Error response: " + errorResponse.toString());
+                try {
+                    Log.e(TAG, "Error response: " + response.body().string());
                 } catch (Exception e) {
                     Log.e(TAG, "Could not read error response", e);
                 }
                 throw new Exception("HTTP " + code);
             }
-            try (InputStream in = connection.getInputStream();
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body().byteStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     line = line.trim();
@@ -116,8 +103,6 @@ public class VersionsRepository {
                     }
                 }
             }
-        } finally {
-            if (connection != null) connection.disconnect();
         }
         return result;
     }
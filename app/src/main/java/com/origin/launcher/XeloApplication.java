@@ -16,5 +16,8 @@ public class XeloApplication extends Application {
         ThemeManager.getInstance(this);
         
         Log.d(TAG, "ThemeManager initialized");
+
+        // Picks up downloads that were still queued or running when the process died
+        DownloadManager.getInstance(this);
     }
 }
\ No newline at end of file
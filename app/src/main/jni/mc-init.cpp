@@ -1,23 +1,130 @@
 #include <jni.h>
 #include <string>
 #include <dlfcn.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
 
+#include <android/log.h>
 #include <android/native_activity.h>
 
+#define TAG "mc-init"
+
 static void (*android_main_minecraft)(struct android_app *app);
 static void (*ANativeActivity_onCreate_minecraft)(ANativeActivity *activity, void *savedState, size_t savedStateSize);
 
+// Startup profile, read by com.origin.launcher.NativeStartupProfile. Durations are in nanoseconds;
+// the layout of the array returned to Java is fixed by the PROFILE_* indices below.
+enum {
+    PROFILE_DLOPEN_NS,
+    PROFILE_DLSYM_MAIN_NS,
+    PROFILE_DLSYM_ONCREATE_NS,
+    PROFILE_ONLOAD_NS,
+    PROFILE_UNTIL_ONCREATE_NS,
+    PROFILE_ONCREATE_NS,
+    PROFILE_FAILURES,
+    PROFILE_SIZE
+};
+
+static jlong profile[PROFILE_SIZE];
+static int64_t onload_start_ns;
+static char profile_errors[512];
+
+static jclass profile_class;
+static jmethodID on_activity_created;
+
+static int64_t now_ns() {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (int64_t) ts.tv_sec * 1000000000LL + ts.tv_nsec;
+}
+
+static void record_error(const char *what, const char *error) {
+    profile[PROFILE_FAILURES]++;
+    size_t used = strlen(profile_errors);
+    snprintf(profile_errors + used, sizeof(profile_errors) - used, "%s%s: %s",
+             used > 0 ? "\n" : "", what, error != nullptr ? error : "unknown error");
+    __android_log_print(ANDROID_LOG_ERROR, TAG, "%s: %s", what, error != nullptr ? error : "unknown error");
+}
+
+static void *timed_dlsym(void *handle, const char *symbol, int slot) {
+    dlerror();
+    int64_t start = now_ns();
+    void *address = dlsym(handle, symbol);
+    profile[slot] = now_ns() - start;
+    if (address == nullptr) {
+        record_error(symbol, dlerror());
+    }
+    return address;
+}
+
 extern "C" void android_main(struct android_app *app) {
     android_main_minecraft(app);
 }
 
 extern "C" void ANativeActivity_onCreate(ANativeActivity *activity, void *savedState, size_t savedStateSize) {
+    if (ANativeActivity_onCreate_minecraft == nullptr) {
+        __android_log_print(ANDROID_LOG_FATAL, TAG, "libminecraftpe.so was not resolved:\n%s", profile_errors);
+        abort();
+    }
+    int64_t start = now_ns();
+    profile[PROFILE_UNTIL_ONCREATE_NS] = start - onload_start_ns;
     ANativeActivity_onCreate_minecraft(activity, savedState, savedStateSize);
+    profile[PROFILE_ONCREATE_NS] = now_ns() - start;
+
+    // Let the launcher persist the now complete profile
+    if (profile_class != nullptr && on_activity_created != nullptr) {
+        JNIEnv *env = activity->env;
+        env->CallStaticVoidMethod(profile_class, on_activity_created);
+        if (env->ExceptionCheck()) {
+            env->ExceptionClear();
+        }
+    }
+}
+
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_origin_launcher_NativeStartupProfile_nativeGetTimings(JNIEnv *env, jclass) {
+    jlongArray result = env->NewLongArray(PROFILE_SIZE);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, PROFILE_SIZE, profile);
+    }
+    return result;
+}
+
+extern "C" JNIEXPORT jstring JNICALL
+Java_com_origin_launcher_NativeStartupProfile_nativeGetErrors(JNIEnv *env, jclass) {
+    return env->NewStringUTF(profile_errors);
 }
 
 JNIEXPORT jint JNI_OnLoad(JavaVM *vm, void *reserved) {
+    onload_start_ns = now_ns();
+
+    int64_t start = now_ns();
     void *handle = dlopen("libminecraftpe.so", RTLD_LAZY);
-    android_main_minecraft = (void (*)(struct android_app *)) (dlsym(handle, "android_main"));
-    ANativeActivity_onCreate_minecraft = (void (*)(ANativeActivity *, void *, size_t)) (dlsym(handle, "ANativeActivity_onCreate"));
+    profile[PROFILE_DLOPEN_NS] = now_ns() - start;
+    if (handle == nullptr) {
+        record_error("dlopen libminecraftpe.so", dlerror());
+    } else {
+        android_main_minecraft = (void (*)(struct android_app *)) timed_dlsym(handle, "android_main", PROFILE_DLSYM_MAIN_NS);
+        ANativeActivity_onCreate_minecraft = (void (*)(ANativeActivity *, void *, size_t)) timed_dlsym(handle, "ANativeActivity_onCreate", PROFILE_DLSYM_ONCREATE_NS);
+    }
+
+    // Resolved here because only JNI_OnLoad runs with the launcher's class loader
+    JNIEnv *env;
+    if (vm->GetEnv((void **) &env, JNI_VERSION_1_6) == JNI_OK) {
+        jclass cls = env->FindClass("com/origin/launcher/NativeStartupProfile");
+        if (cls != nullptr) {
+            profile_class = (jclass) env->NewGlobalRef(cls);
+            on_activity_created = env->GetStaticMethodID(cls, "onActivityCreated", "()V");
+            env->DeleteLocalRef(cls);
+        }
+        if (env->ExceptionCheck()) {
+            env->ExceptionClear();
+            on_activity_created = nullptr;
+        }
+    }
+
+    profile[PROFILE_ONLOAD_NS] = now_ns() - onload_start_ns;
     return JNI_VERSION_1_6;
-}
\ No newline at end of file
+}
@@ -0,0 +1,340 @@
+package com.origin.launcher;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+public class ApkDeltaTest {
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final OkHttpClient client = new OkHttpClient();
+    private LocalRangeServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void copiesUnchangedEntriesAndFetchesChangedOnes() throws IOException {
+        byte[] base = version(1).signingBlock(4000).build();
+        byte[] remote = version(2).signingBlock(4000).build();
+
+        long reused = rebuild(base, remote);
+
+        assertEquals(compressedSize(remote, "lib/arm64-v8a/libmain.so", "assets/big.pack", "assets/tail.bin"),
+            reused);
+        assertTrue(server.bodyBytes() < remote.length - reused + 80000);
+    }
+
+    @Test
+    public void apkWithoutSigningBlock() throws IOException {
+        byte[] base = version(1).build();
+        byte[] remote = version(2).build();
+
+        long reused = rebuild(base, remote);
+
+        assertEquals(compressedSize(remote, "lib/arm64-v8a/libmain.so", "assets/big.pack", "assets/tail.bin"),
+            reused);
+    }
+
+    @Test
+    public void unchangedApkIsCopiedExceptSmallEntries() throws IOException {
+        byte[] apk = version(1).signingBlock(4000).build();
+
+        long reused = rebuild(apk, apk);
+
+        assertEquals(compressedSize(apk, "classes.dex", "lib/arm64-v8a/libmain.so", "assets/big.pack",
+            "assets/changed.pack", "assets/tail.bin"), reused);
+    }
+
+    @Test
+    public void lastEntryOverlapsDirectoryTail() throws IOException {
+        // A small directory: the tail fetched to find it holds the end of the last entry
+        byte[] tail = TestZips.data(30, MB, 0);
+        byte[] base = TestZips.apk()
+            .deflated("classes.dex", TestZips.data(31, MB))
+            .stored("assets/tail.bin", tail)
+            .build();
+        byte[] remote = TestZips.apk()
+            .deflated("classes.dex", TestZips.data(32, MB))
+            .stored("assets/tail.bin", tail)
+            .build();
+        assertTrue(remote.length - (ApkIndex.EOCD_MIN_SIZE + ApkIndex.MAX_COMMENT_SIZE)
+            < centralDirectoryOffset(remote));
+
+        long reused = rebuild(base, remote);
+
+        assertEquals(tail.length, reused);
+    }
+
+    @Test
+    public void recompressedEntryWithSameCrcIsFetched() throws IOException {
+        byte[] pack = TestZips.data(40, MB);
+        byte[] base = TestZips.apk()
+            .deflated("classes.dex", TestZips.data(41, MB))
+            .deflated("assets/pack", pack, Deflater.BEST_SPEED)
+            .stored("lib/arm64-v8a/libmain.so", TestZips.data(42, MB, 0))
+            .build();
+        byte[] remote = TestZips.apk()
+            .deflated("classes.dex", TestZips.data(41, MB))
+            .deflated("assets/pack", pack, Deflater.BEST_COMPRESSION)
+            .stored("lib/arm64-v8a/libmain.so", TestZips.data(42, MB, 0))
+            .build();
+
+        long reused = rebuild(base, remote);
+
+        assertEquals(compressedSize(remote, "classes.dex", "lib/arm64-v8a/libmain.so"), reused);
+    }
+
+    @Test
+    public void baseEntryWithOtherBytesIsFetchedAgain() throws IOException {
+        byte[] remote = version(2).signingBlock(4000).build();
+        byte[] base = version(1).signingBlock(4000).build();
+        File baseFile = tmp.newFile("base.apk");
+        TestZips.write(baseFile, base);
+        // Same directory record, other data: only the CRC check after the copy can tell
+        try (ApkIndex index = ApkIndex.open(baseFile);
+             RandomAccessFile raf = new RandomAccessFile(baseFile, "rw")) {
+            raf.seek(index.dataOffset(index.getEntry("assets/big.pack")) + 1000);
+            raf.write(0x42 ^ raf.readByte());
+        }
+
+        long reused = rebuild(baseFile, remote);
+
+        assertEquals(compressedSize(remote, "lib/arm64-v8a/libmain.so", "assets/tail.bin"), reused);
+    }
+
+    @Test
+    public void paddingAfterEntryDataIsFetchedAgain() throws IOException {
+        byte[] base = version(1).build();
+        // Eight stray bytes after big.pack's data descriptor put its guessed data offset off by eight
+        byte[] remote = insertAfter(version(2).build(), "assets/big.pack", 8);
+
+        long reused = rebuild(base, remote);
+
+        assertEquals(compressedSize(remote, "lib/arm64-v8a/libmain.so", "assets/tail.bin"), reused);
+    }
+
+    @Test
+    public void corruptedRangeFallsBackToFullDownload() throws IOException {
+        byte[] base = version(1).signingBlock(4000).build();
+        byte[] remote = version(2).signingBlock(4000).build();
+        server = new LocalRangeServer(remote);
+        // classes.dex differs from the base, so the delta fetches it
+        server.corruptNextRangeAt(dataOffset(remote, "classes.dex") + 1000);
+        ApkDownloader downloader = deltaDownloader(base);
+
+        download(downloader, remote);
+
+        assertEquals(0, downloader.getReusedBytes());
+    }
+
+    @Test
+    public void expectedHashIsChecked() throws IOException {
+        byte[] base = version(1).signingBlock(4000).build();
+        byte[] remote = version(2).signingBlock(4000).build();
+        server = new LocalRangeServer(remote);
+        ApkDownloader downloader = deltaDownloader(base);
+        downloader.setExpectedSha256(ApkIntegrity.StreamingDigest.resume(file(remote)).finish().toUpperCase());
+
+        download(downloader, remote);
+
+        assertTrue(downloader.getReusedBytes() > 0);
+    }
+
+    @Test
+    public void hashMismatchFailsTheDownload() throws IOException {
+        byte[] base = version(1).signingBlock(4000).build();
+        byte[] remote = version(2).signingBlock(4000).build();
+        server = new LocalRangeServer(remote);
+        ApkDownloader downloader = deltaDownloader(base);
+        downloader.setExpectedSha256(ApkIntegrity.StreamingDigest.resume(file(base)).finish());
+        File apk = new File(tmp.getRoot(), "versions/remote.apk");
+
+        try {
+            downloader.download(server.url(), apk, listener(remote));
+            fail("Downloaded a file with another hash");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("SHA-256"));
+        }
+        assertFalse(apk.exists());
+        assertFalse(new File(apk.getAbsolutePath() + ".part").exists());
+        assertEquals(0, downloader.getReusedBytes());
+    }
+
+    @Test
+    public void plansOnlyLargeMatchingEntries() throws IOException {
+        byte[] base = version(1).signingBlock(4000).build();
+        byte[] remote = version(2).signingBlock(4000).build();
+        server = new LocalRangeServer(remote);
+        File baseFile = tmp.newFile("base.apk");
+        TestZips.write(baseFile, base);
+        ApkDownloader downloader = new ApkDownloader(ApkDownloader.DEFAULT_CONNECTIONS, null, client);
+        ApkDelta delta = new ApkDelta(downloader, server.url(), remote.length, server.etag());
+        delta.readDirectory();
+
+        try (ApkIndex index = ApkIndex.open(baseFile)) {
+            assertEquals(compressedSize(remote, "lib/arm64-v8a/libmain.so", "assets/big.pack", "assets/tail.bin"),
+                delta.reusableBytes(index));
+        }
+        // The tail and at most one more request for the rest of the directory
+        assertTrue(server.requestCount() <= 2);
+    }
+
+    @Test
+    public void balanceSplitsLargeRanges() {
+        List<long[]> pieces = ApkDelta.balance(Arrays.asList(new long[] {0, 8L * MB - 1}, new long[] {
+            9L * MB, 9L * MB + 99}), 4);
+        assertEquals(5, pieces.size());
+        assertArrayEquals(new long[] {0, 2L * MB + 24}, pieces.get(0));
+        assertArrayEquals(new long[] {9L * MB, 9L * MB + 99}, pieces.get(4));
+
+        List<long[]> small = ApkDelta.balance(Collections.singletonList(new long[] {0, MB}), 4);
+        assertEquals(2, small.size());
+    }
+
+    /** Builds {@code remote} from {@code base} through the downloader and returns the bytes it copied. */
+    private long rebuild(byte[] base, byte[] remote) throws IOException {
+        File baseFile = tmp.newFile("base.apk");
+        TestZips.write(baseFile, base);
+        return rebuild(baseFile, remote);
+    }
+
+    private long rebuild(File baseFile, byte[] remote) throws IOException {
+        server = new LocalRangeServer(remote);
+        ApkDownloader downloader = new ApkDownloader(ApkDownloader.DEFAULT_CONNECTIONS, null, client);
+        downloader.setDeltaBases(Collections.singletonList(baseFile));
+        download(downloader, remote);
+        assertTrue(downloader.getReusedBytes() > 0);
+        return downloader.getReusedBytes();
+    }
+
+    private ApkDownloader deltaDownloader(byte[] base) throws IOException {
+        ApkDownloader downloader = new ApkDownloader(ApkDownloader.DEFAULT_CONNECTIONS, null, client);
+        downloader.setDeltaBases(Collections.singletonList(file(base)));
+        return downloader;
+    }
+
+    /** Downloads {@code remote} from {@link #server} and checks the file came out byte for byte. */
+    private void download(ApkDownloader downloader, byte[] remote) throws IOException {
+        File apk = new File(tmp.getRoot(), "versions/remote.apk");
+        downloader.download(server.url(), apk, listener(remote));
+
+        try (RandomAccessFile raf = new RandomAccessFile(apk, "r")) {
+            byte[] built = new byte[(int) raf.length()];
+            raf.readFully(built);
+            assertArrayEquals(remote, built);
+        }
+        assertFalse(new File(apk.getAbsolutePath() + ".part").exists());
+        assertEquals(ApkIntegrity.Status.VERIFIED, ApkIntegrity.check(apk));
+    }
+
+    private static ApkDownloader.ProgressListener listener(byte[] remote) {
+        return new ApkDownloader.ProgressListener() {
+            @Override
+            public void onStart(long total, String etag) {
+            }
+
+            @Override
+            public void onProgress(long downloaded, long bytesPerSecond) {
+                assertTrue(downloaded <= remote.length);
+            }
+        };
+    }
+
+    /** Entries of every kind, in APK order; the manifest, classes.dex and changed.pack differ between versions. */
+    private static TestZips.Builder version(int version) {
+        TestZips.Builder builder = TestZips.apk()
+            .deflated("AndroidManifest.xml", TestZips.data(version, 3000))
+            .deflated("classes.dex", TestZips.data(10 + version, 2 * MB));
+        for (int i = 0; i < 20; i++) {
+            builder.deflated("assets/small/" + i + ".json", TestZips.data(100 + i, 5000));
+        }
+        return builder
+            .stored("lib/arm64-v8a/libmain.so", TestZips.data(20, MB, 0))
+            .deflated("assets/big.pack", TestZips.data(21, MB))
+            .deflated("assets/changed.pack", TestZips.data(22 + version, MB))
+            .stored("assets/tail.bin", TestZips.data(25, 600 * 1024, 0));
+    }
+
+    private File file(byte[] bytes) throws IOException {
+        File file = tmp.newFile();
+        TestZips.write(file, bytes);
+        return file;
+    }
+
+    private long compressedSize(byte[] apk, String... names) throws IOException {
+        long sum = 0;
+        try (ApkIndex index = ApkIndex.open(file(apk))) {
+            for (String name : names) {
+                sum += index.getEntry(name).compressedSize;
+            }
+        }
+        return sum;
+    }
+
+    private long dataOffset(byte[] apk, String name) throws IOException {
+        try (ApkIndex index = ApkIndex.open(file(apk))) {
+            return index.dataOffset(index.getEntry(name));
+        }
+    }
+
+    private static int centralDirectoryOffset(byte[] zip) {
+        return ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN).getInt(TestZips.eocdOffset(zip) + 16);
+    }
+
+    /**
+     * Inserts {@code count} bytes between the named entry and the one after it,
+     * moving the later local header offsets and the directory offset along.
+     */
+    private byte[] insertAfter(byte[] zip, String name, int count) throws IOException {
+        long at;
+        try (ApkIndex index = ApkIndex.open(file(zip))) {
+            ApkIndex.Entry entry = index.getEntry(name);
+            at = Long.MAX_VALUE;
+            for (ApkIndex.Entry e : index.entries()) {
+                if (e.localHeaderOffset > entry.localHeaderOffset) {
+                    at = Math.min(at, e.localHeaderOffset);
+                }
+            }
+        }
+        byte[] out = new byte[zip.length + count];
+        System.arraycopy(zip, 0, out, 0, (int) at);
+        System.arraycopy(zip, (int) at, out, (int) at + count, zip.length - (int) at);
+        ByteBuffer buf = ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = TestZips.eocdOffset(out);
+        int cd = buf.getInt(eocd + 16) + count;
+        buf.putInt(eocd + 16, cd);
+        int entries = buf.getShort(eocd + 10) & 0xffff;
+        for (int i = 0, pos = cd; i < entries; i++) {
+            long offset = buf.getInt(pos + 42) & 0xffffffffL;
+            if (offset >= at) {
+                buf.putInt(pos + 42, (int) (offset + count));
+            }
+            pos += 46 + (buf.getShort(pos + 28) & 0xffff) + (buf.getShort(pos + 30) & 0xffff)
+                + (buf.getShort(pos + 32) & 0xffff);
+        }
+        return out;
+    }
+}
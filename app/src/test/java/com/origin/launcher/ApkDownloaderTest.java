@@ -0,0 +1,315 @@
+package com.origin.launcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+public class ApkDownloaderTest {
+    /** Big enough for three segments. */
+    private static final int LARGE = (int) (3 * ApkDownloader.MIN_SEGMENT_SIZE + 12345);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final OkHttpClient client = new OkHttpClient();
+    private LocalRangeServer server;
+    private File apk;
+    private File part;
+    private File state;
+
+    @Before
+    public void setUp() {
+        apk = new File(tmp.getRoot(), "versions/1.21.0.apk");
+        part = new File(apk.getAbsolutePath() + ".part");
+        state = new File(part.getAbsolutePath() + ".segments");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void honouredRangeDownloadsSegmentsInParallel() throws IOException {
+        byte[] content = TestZips.data(1, LARGE, 0);
+        server = new LocalRangeServer(content);
+        Listener listener = new Listener();
+
+        downloader(null).download(server.url(), apk, listener);
+
+        assertDownloaded(content);
+        assertEquals(LARGE, listener.total);
+        assertEquals(server.etag(), listener.etag);
+        assertEquals(LARGE, listener.downloaded);
+        // The probe, then one request per segment
+        assertEquals(1 + 3, server.requestCount());
+        assertEquals(1 + LARGE, server.bodyBytes());
+    }
+
+    @Test
+    public void serverIgnoringRangeFallsBackToOneStream() throws IOException {
+        byte[] content = TestZips.data(2, LARGE, 0);
+        server = new LocalRangeServer(content);
+        // The probe gets its byte, the segments then get whole-file answers
+        server.honourRanges(1);
+
+        downloader(null).download(server.url(), apk, new Listener());
+
+        assertDownloaded(content);
+    }
+
+    @Test
+    public void cachedProbeOfRangeServerIsRedoneWhenRangesStop() throws IOException {
+        byte[] content = TestZips.data(3, LARGE, 0);
+        server = new LocalRangeServer(content);
+        UrlMetadataCache cache = new UrlMetadataCache(new File(tmp.getRoot(), "url-cache"),
+            UrlMetadataCache.DEFAULT_TTL_MS);
+        ApkDownloader downloader = downloader(cache);
+        cache.put(server.url(), probed(server.etag(), true));
+        server.honourRanges(0);
+
+        downloader.download(server.url(), apk, new Listener());
+
+        assertDownloaded(content);
+        assertFalse(cache.get(server.url()).rangesSupported);
+    }
+
+    @Test
+    public void resumesEverySegmentFromStateFile() throws IOException {
+        byte[] content = TestZips.data(4, LARGE, 0);
+        server = new LocalRangeServer(content);
+        long[][] segments = ApkDownloader.split(LARGE, 0, ApkDownloader.DEFAULT_CONNECTIONS);
+        assertEquals(3, segments.length);
+        for (long[] s : segments) {
+            s[2] = (s[1] - s[0] + 1) / 3;
+        }
+        // The last segment is already complete
+        segments[2][2] = segments[2][1] - segments[2][0] + 1;
+        long remaining = LARGE;
+        for (long[] s : segments) {
+            remaining -= s[2];
+        }
+        writePart(content, segments, false);
+        writeState(LARGE, server.etag(), segments);
+
+        downloader(null).download(server.url(), apk, new Listener());
+
+        assertDownloaded(content);
+        assertEquals(1 + 2, server.requestCount());
+        assertEquals(1 + remaining, server.bodyBytes());
+    }
+
+    @Test
+    public void stateForAnotherEtagRestartsFromScratch() throws IOException {
+        byte[] content = TestZips.data(5, LARGE, 0);
+        server = new LocalRangeServer(content);
+        long[][] segments = ApkDownloader.split(LARGE, 0, ApkDownloader.DEFAULT_CONNECTIONS);
+        for (long[] s : segments) {
+            s[2] = (s[1] - s[0] + 1) / 2;
+        }
+        // Half of every segment holds bytes of an older build
+        writePart(content, segments, true);
+        writeState(LARGE, "\"v0-" + LARGE + "\"", segments);
+
+        downloader(null).download(server.url(), apk, new Listener());
+
+        assertDownloaded(content);
+        assertEquals(1 + LARGE, server.bodyBytes());
+    }
+
+    @Test
+    public void changedFileBehindCachedEtagRestartsFromScratch() throws IOException {
+        byte[] oldContent = TestZips.data(6, LARGE, 0);
+        byte[] newContent = TestZips.data(7, LARGE, 0);
+        server = new LocalRangeServer(oldContent);
+        UrlMetadataCache cache = new UrlMetadataCache(new File(tmp.getRoot(), "url-cache"),
+            UrlMetadataCache.DEFAULT_TTL_MS);
+        ApkDownloader downloader = downloader(cache);
+        String oldEtag = server.etag();
+        cache.put(server.url(), probed(oldEtag, true));
+        long[][] segments = ApkDownloader.split(LARGE, 0, ApkDownloader.DEFAULT_CONNECTIONS);
+        for (long[] s : segments) {
+            s[2] = (s[1] - s[0] + 1) / 2;
+        }
+        writePart(oldContent, segments, false);
+        writeState(LARGE, oldEtag, segments);
+        // Re-uploaded with the same size: only If-Range can tell
+        server.setContent(newContent);
+
+        downloader.download(server.url(), apk, new Listener());
+
+        assertDownloaded(newContent);
+        assertEquals(server.etag(), cache.get(server.url()).etag);
+    }
+
+    @Test
+    public void recordHashesWholeResumedFile() throws IOException {
+        byte[] content = TestZips.data(8, 3 * 1024 * 1024, 0);
+        server = new LocalRangeServer(content);
+        long[][] segments = ApkDownloader.split(content.length, 1024 * 1024 + 17, 1);
+        writePart(content, segments, false);
+        writeState(content.length, server.etag(), segments);
+
+        downloader(null).download(server.url(), apk, new Listener());
+
+        assertDownloaded(content);
+        assertEquals(1 + content.length - (1024 * 1024 + 17), server.bodyBytes());
+    }
+
+    @Test
+    public void changedApkFailsItsRecord() throws IOException {
+        byte[] content = TestZips.data(9, 2 * 1024 * 1024, 0);
+        server = new LocalRangeServer(content);
+        downloader(null).download(server.url(), apk, new Listener());
+        assertEquals(ApkIntegrity.Status.VERIFIED, ApkIntegrity.check(apk));
+
+        // Same size, new mtime: the file is hashed again and no longer matches
+        try (RandomAccessFile raf = new RandomAccessFile(apk, "rw")) {
+            raf.seek(content.length / 2);
+            raf.write(content[content.length / 2] ^ 0x55);
+        }
+        assertTrue(apk.setLastModified(apk.lastModified() + 2000));
+        assertEquals(ApkIntegrity.Status.CORRUPT, ApkIntegrity.check(apk));
+
+        try (RandomAccessFile raf = new RandomAccessFile(apk, "rw")) {
+            raf.setLength(content.length - 1);
+        }
+        assertEquals(ApkIntegrity.Status.CORRUPT, ApkIntegrity.check(apk));
+    }
+
+    @Test
+    public void splitCreditsContiguousPrefix() {
+        long total = 2 * ApkDownloader.MIN_SEGMENT_SIZE + 1;
+        long[][] segments = ApkDownloader.split(total, ApkDownloader.MIN_SEGMENT_SIZE + 10, 4);
+        assertEquals(2, segments.length);
+        assertArrayEquals(new long[] {0, ApkDownloader.MIN_SEGMENT_SIZE - 1, ApkDownloader.MIN_SEGMENT_SIZE},
+            segments[0]);
+        assertArrayEquals(new long[] {ApkDownloader.MIN_SEGMENT_SIZE, total - 1, 10}, segments[1]);
+        assertEquals(1, ApkDownloader.split(ApkDownloader.MIN_SEGMENT_SIZE - 1, 0, 4).length);
+    }
+
+    @Test
+    public void readStateRejectsMismatchedOrBrokenFiles() throws IOException {
+        long[][] segments = {{0, 99, 50}, {100, 199, 0}};
+        writeState(200, "\"a\"", segments);
+        assertEquals(2, ApkDownloader.readState(state, 200, "\"a\"").length);
+        assertNull(ApkDownloader.readState(state, 200, "\"b\""));
+        assertNull(ApkDownloader.readState(state, 201, "\"a\""));
+
+        writeState(200, "\"a\"", new long[][] {{0, 99, 50}, {101, 199, 0}});
+        assertNull(ApkDownloader.readState(state, 200, "\"a\""));
+        writeState(200, "\"a\"", new long[][] {{0, 99, 101}, {100, 199, 0}});
+        assertNull(ApkDownloader.readState(state, 200, "\"a\""));
+        writeState(200, "\"a\"", new long[][] {{0, 99, 0}});
+        assertNull(ApkDownloader.readState(state, 200, "\"a\""));
+    }
+
+    private ApkDownloader downloader(UrlMetadataCache cache) {
+        return new ApkDownloader(ApkDownloader.DEFAULT_CONNECTIONS, cache, client);
+    }
+
+    /** What a probe of the server just now would have cached. */
+    private UrlMetadataCache.Entry probed(String etag, boolean rangesSupported) {
+        return new UrlMetadataCache.Entry(server.url(), LARGE, etag, rangesSupported, System.currentTimeMillis());
+    }
+
+    private void assertDownloaded(byte[] content) throws IOException {
+        assertTrue(apk.isFile());
+        assertFalse(part.exists());
+        assertFalse(state.exists());
+        try (RandomAccessFile raf = new RandomAccessFile(apk, "r")) {
+            byte[] onDisk = new byte[(int) raf.length()];
+            raf.readFully(onDisk);
+            assertArrayEquals(content, onDisk);
+        }
+        assertEquals("sha256=" + sha256(content), recordLine("sha256="));
+        assertEquals(ApkIntegrity.Status.VERIFIED, ApkIntegrity.check(apk));
+    }
+
+    /** A preallocated .part holding the done prefix of every segment; {@code stale} writes other bytes there. */
+    private void writePart(byte[] content, long[][] segments, boolean stale) throws IOException {
+        part.getParentFile().mkdirs();
+        try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+            raf.setLength(content.length);
+            for (long[] s : segments) {
+                if (stale) {
+                    raf.seek(s[0]);
+                    raf.write(TestZips.data(s[0], (int) s[2], 0));
+                } else {
+                    raf.seek(s[0]);
+                    raf.write(content, (int) s[0], (int) s[2]);
+                }
+            }
+        }
+    }
+
+    private void writeState(long total, String etag, long[][] segments) throws IOException {
+        state.getParentFile().mkdirs();
+        try (Writer writer = new FileWriter(state)) {
+            writer.write("total=" + total + "\n");
+            writer.write("etag=" + etag + "\n");
+            for (long[] s : segments) {
+                writer.write(s[0] + ":" + s[1] + ":" + s[2] + "\n");
+            }
+        }
+    }
+
+    private String recordLine(String prefix) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(ApkIntegrity.recordFile(apk)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final class Listener implements ApkDownloader.ProgressListener {
+        volatile long total = -2;
+        volatile String etag;
+        volatile long downloaded = -1;
+
+        @Override
+        public void onStart(long total, String etag) {
+            this.total = total;
+            this.etag = etag;
+        }
+
+        @Override
+        public void onProgress(long downloaded, long bytesPerSecond) {
+            this.downloaded = downloaded;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.origin.launcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+public class ApkIndexTest {
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void findsDirectoryBehindComment() throws IOException {
+        byte[] dex = TestZips.data(1, 5000);
+        File apk = TestZips.apk()
+            .deflated("classes.dex", dex)
+            .comment("signed by nobody in particular")
+            .write(tmp.newFile("comment.apk"));
+
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            assertEquals(1, index.entries().size());
+            assertArrayEquals(dex, read(index, index.getEntry("classes.dex")));
+        }
+    }
+
+    @Test
+    public void findsDirectoryBehindLongestComment() throws IOException {
+        StringBuilder comment = new StringBuilder();
+        while (comment.length() < MAX_COMMENT_SIZE) {
+            comment.append('x');
+        }
+        File apk = TestZips.apk()
+            .stored("AndroidManifest.xml", TestZips.data(2, 300))
+            .comment(comment.toString())
+            .write(tmp.newFile("long-comment.apk"));
+
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            assertNotNull(index.getEntry("AndroidManifest.xml"));
+        }
+    }
+
+    @Test
+    public void skipsSignatureInsideComment() throws IOException {
+        // An EOCD signature inside the comment must not be taken for the record
+        String fake = new String(new char[] {'P', 'K', 5, 6}) + "0123456789012345678";
+        File apk = TestZips.apk()
+            .stored("a.txt", TestZips.data(3, 100))
+            .comment(fake)
+            .write(tmp.newFile("fake-eocd.apk"));
+
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            assertNotNull(index.getEntry("a.txt"));
+        }
+    }
+
+    @Test
+    public void rejectsFileWithoutDirectory() throws IOException {
+        File notZip = tmp.newFile("not.apk");
+        TestZips.write(notZip, TestZips.data(4, 1000, 0));
+
+        try {
+            ApkIndex.open(notZip).close();
+            fail("Opened a file without an end of central directory record");
+        } catch (ZipException expected) {
+        }
+    }
+
+    @Test
+    public void enumeratesNativeLibrariesOfOneAbi() throws IOException {
+        File apk = TestZips.apk()
+            .stored("lib/arm64-v8a/libmain.so", TestZips.data(5, 4000))
+            .stored("lib/arm64-v8a/libc++_shared.so", TestZips.data(6, 4000))
+            .stored("lib/arm64-v8a/nested/libignored.so", TestZips.data(7, 100))
+            .stored("lib/armeabi-v7a/libmain.so", TestZips.data(8, 4000))
+            .stored("assets/lib/arm64-v8a/libnot.so", TestZips.data(9, 100))
+            .write(tmp.newFile("libs.apk"));
+
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            assertEquals(list("lib/arm64-v8a/libmain.so", "lib/arm64-v8a/libc++_shared.so"),
+                names(index.nativeLibraries("arm64-v8a")));
+            assertEquals(list("lib/armeabi-v7a/libmain.so"), names(index.nativeLibraries("armeabi-v7a")));
+            assertTrue(index.nativeLibraries("x86_64").isEmpty());
+            assertTrue(index.hasAbi("armeabi-v7a"));
+            assertFalse(index.hasAbi("x86"));
+            assertEquals(list("arm64-v8a", "armeabi-v7a"), new ArrayList<>(index.abis()));
+        }
+    }
+
+    @Test
+    public void ordersDexFilesByIndex() throws IOException {
+        TestZips.Builder builder = TestZips.apk();
+        for (int i = 12; i >= 2; i--) {
+            builder.deflated("classes" + i + ".dex", TestZips.data(i, 200));
+        }
+        File apk = builder
+            .deflated("classes.dex", TestZips.data(1, 200))
+            .deflated("classes1.dex", TestZips.data(13, 200))
+            .deflated("classes02x.dex", TestZips.data(14, 200))
+            .deflated("assets/classes2.dex", TestZips.data(15, 200))
+            .write(tmp.newFile("dex.apk"));
+
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            List<String> expected = list("classes.dex");
+            for (int i = 2; i <= 12; i++) {
+                expected.add("classes" + i + ".dex");
+            }
+            assertEquals(expected, names(index.dexEntries()));
+        }
+    }
+
+    @Test
+    public void dexIndexAcceptsOnlyTopLevelClassesN() {
+        assertEquals(1, ApkIndex.dexIndex("classes.dex"));
+        assertEquals(2, ApkIndex.dexIndex("classes2.dex"));
+        assertEquals(10, ApkIndex.dexIndex("classes10.dex"));
+        assertEquals(-1, ApkIndex.dexIndex("classes1.dex"));
+        assertEquals(-1, ApkIndex.dexIndex("classes0.dex"));
+        assertEquals(-1, ApkIndex.dexIndex("classesx.dex"));
+        assertEquals(-1, ApkIndex.dexIndex("classes99999999999.dex"));
+        assertEquals(-1, ApkIndex.dexIndex("assets/classes2.dex"));
+        assertEquals(-1, ApkIndex.dexIndex("classes.jar"));
+    }
+
+    @Test
+    public void dataOffsetSkipsLocalNameAndExtra() throws IOException {
+        byte[] lib = TestZips.data(20, 10000);
+        byte[] dex = TestZips.data(21, 30000);
+        // An extra field in the local header, like the padding zipalign adds
+        byte[] extra = {(byte) 0xfe, (byte) 0xca, 6, 0, 1, 2, 3, 4, 5, 6};
+        File apk = TestZips.apk()
+            .deflated("classes.dex", dex)
+            .stored("lib/arm64-v8a/libmain.so", lib)
+            .extra("lib/arm64-v8a/libmain.so", extra)
+            .write(tmp.newFile("offsets.apk"));
+
+        try (ApkIndex index = ApkIndex.open(apk);
+             RandomAccessFile raf = new RandomAccessFile(apk, "r")) {
+            ApkIndex.Entry entry = index.getEntry("lib/arm64-v8a/libmain.so");
+            long offset = index.dataOffset(entry);
+            assertEquals(entry.localHeaderOffset + LOC_HEADER_SIZE
+                + entry.name.length() + extra.length, offset);
+
+            byte[] onDisk = new byte[lib.length];
+            raf.seek(offset);
+            raf.readFully(onDisk);
+            assertArrayEquals(lib, onDisk);
+
+            ApkIndex.Entry deflated = index.getEntry("classes.dex");
+            assertTrue(deflated.hasDataDescriptor);
+            assertEquals(deflated.localHeaderOffset + LOC_HEADER_SIZE + deflated.name.length(),
+                index.dataOffset(deflated));
+            assertArrayEquals(dex, read(index, deflated));
+        }
+    }
+
+    @Test
+    public void dataOffsetRejectsBadLocalHeader() throws IOException {
+        File apk = TestZips.apk()
+            .stored("a.bin", TestZips.data(22, 1000))
+            .write(tmp.newFile("bad-local.apk"));
+        try (RandomAccessFile raf = new RandomAccessFile(apk, "rw")) {
+            raf.seek(0);
+            raf.write(0);
+        }
+
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            try {
+                index.dataOffset(index.getEntry("a.bin"));
+                fail("Accepted a corrupt local header");
+            } catch (ZipException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void alignedStoredLibrariesLoadInPlace() throws IOException {
+        File apk = TestZips.apk()
+            .align(4096)
+            .deflated("classes.dex", TestZips.data(30, 10000))
+            .stored("lib/arm64-v8a/libmain.so", TestZips.data(31, 10000))
+            .stored("lib/arm64-v8a/libfmod.so", TestZips.data(32, 5001))
+            .write(tmp.newFile("aligned.apk"));
+
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            for (ApkIndex.Entry lib : index.nativeLibraries("arm64-v8a")) {
+                assertEquals(0, index.dataOffset(lib) % 4096);
+            }
+            assertTrue(index.nativeLibrariesLoadableInPlace("arm64-v8a"));
+            assertFalse(index.nativeLibrariesLoadableInPlace("armeabi-v7a"));
+        }
+    }
+
+    @Test
+    public void unalignedOrCompressedLibrariesDoNotLoadInPlace() throws IOException {
+        File unaligned = TestZips.apk()
+            .stored("lib/arm64-v8a/libmain.so", TestZips.data(33, 10000))
+            .write(tmp.newFile("unaligned.apk"));
+        File compressed = TestZips.apk()
+            .align(4096)
+            .stored("lib/arm64-v8a/libmain.so", TestZips.data(34, 10000))
+            .deflated("lib/arm64-v8a/libfmod.so", TestZips.data(35, 10000))
+            .write(tmp.newFile("compressed.apk"));
+
+        try (ApkIndex index = ApkIndex.open(unaligned)) {
+            assertNotEquals(0, index.dataOffset(index.getEntry("lib/arm64-v8a/libmain.so")) % 4096);
+            assertFalse(index.nativeLibrariesLoadableInPlace("arm64-v8a"));
+        }
+        try (ApkIndex index = ApkIndex.open(compressed)) {
+            assertFalse(index.nativeLibrariesLoadableInPlace("arm64-v8a"));
+        }
+    }
+
+    private static byte[] read(ApkIndex index, ApkIndex.Entry entry) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = index.openStream(entry)) {
+            byte[] buf = new byte[4096];
+            int r;
+            while ((r = in.read(buf)) != -1) {
+                out.write(buf, 0, r);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<String> names(List<ApkIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (ApkIndex.Entry e : entries) {
+            names.add(e.name);
+        }
+        return names;
+    }
+
+    private static List<String> list(String... names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,78 @@
+package com.origin.launcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ApkStagerTest {
+    private static final String ABI = "arm64-v8a";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private ApkStager stager;
+    private File installedDir;
+
+    @Before
+    public void setUp() throws IOException {
+        stager = new ApkStager(tmp.newFolder("staging"), ABI, new StagingEngine(2));
+        installedDir = tmp.newFolder("data-app");
+    }
+
+    @Test
+    public void loadsAlignedLibrariesInPlaceFromInstalledApk() throws IOException {
+        File apk = alignedApk(new File(installedDir, "base.apk"));
+        stager.setInPlaceDir(installedDir);
+
+        ApkStager.Staged staged = stage(apk);
+
+        assertTrue(staged.libsInApk);
+        assertNull(staged.libs);
+        assertEquals(apk.getAbsolutePath() + "!/lib/" + ABI, staged.nativeLibraryPath);
+    }
+
+    @Test
+    public void extractsLibrariesOfApkOutsideInstalledDirectory() throws IOException {
+        File apk = alignedApk(new File(tmp.newFolder("versions"), "1.21.0.apk"));
+        stager.setInPlaceDir(installedDir);
+
+        ApkStager.Staged staged = stage(apk);
+
+        assertFalse(staged.libsInApk);
+        assertNotNull(staged.libs);
+        assertEquals(2, staged.libs.extracted.size());
+        assertTrue(new File(staged.nativeLibraryPath, "libminecraftpe.so").isFile());
+    }
+
+    @Test
+    public void extractsLibrariesWithoutInPlaceDirectory() throws IOException {
+        File apk = alignedApk(new File(installedDir, "base.apk"));
+
+        ApkStager.Staged staged = stage(apk);
+
+        assertFalse(staged.libsInApk);
+        assertNotNull(staged.libs);
+        assertEquals(stager.dirFor(apk).getAbsolutePath() + "/lib/", staged.nativeLibraryPath);
+    }
+
+    private ApkStager.Staged stage(File apk) throws IOException {
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            return stager.stage(index, index, true, null);
+        }
+    }
+
+    private static File alignedApk(File file) throws IOException {
+        return TestZips.apk()
+            .align(4096)
+            .deflated("classes.dex", TestZips.data(1, 20000))
+            .stored("lib/" + ABI + "/libminecraftpe.so", TestZips.data(2, 30000))
+            .stored("lib/" + ABI + "/libfmod.so", TestZips.data(3, 10000))
+            .write(file);
+    }
+}
@@ -0,0 +1,137 @@
+package com.origin.launcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class DexStagingCacheTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File apk;
+    private File dir;
+    private DexStagingCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        apk = new File(tmp.getRoot(), "base.apk");
+        dir = new File(tmp.getRoot(), "dex");
+        cache = new DexStagingCache(dir);
+    }
+
+    @Test
+    public void stagesEveryDexHighestIndexFirst() throws IOException {
+        writeApk(TestZips.data(2, 20000));
+
+        DexStagingCache.Result result = stage();
+        assertFalse(result.reused);
+        assertEquals(Arrays.asList("classes3.dex", "classes2.dex", "classes.dex"), result.copied);
+        assertEquals(Arrays.asList(new File(dir, "classes3.dex"), new File(dir, "classes2.dex"),
+            new File(dir, "classes.dex")), result.dexFiles);
+        assertArrayEquals(TestZips.data(2, 20000), read(new File(dir, "classes2.dex")));
+        assertTrue(new File(dir, "dex.manifest").isFile());
+    }
+
+    @Test
+    public void reusesUnchangedApk() throws IOException {
+        writeApk(TestZips.data(2, 20000));
+        stage();
+        long stagedAt = new File(dir, "classes.dex").lastModified();
+
+        DexStagingCache.Result result = stage();
+        assertTrue(result.reused);
+        assertTrue(result.copied.isEmpty());
+        assertEquals(3, result.dexFiles.size());
+        assertEquals(stagedAt, new File(dir, "classes.dex").lastModified());
+    }
+
+    @Test
+    public void changedApkRecopiesOnlyChangedDex() throws IOException {
+        writeApk(TestZips.data(2, 20000));
+        stage();
+
+        byte[] changed = TestZips.data(22, 21000);
+        writeApk(changed);
+        assertTrue(apk.setLastModified(apk.lastModified() + 5000));
+
+        DexStagingCache.Result result = stage();
+        assertFalse(result.reused);
+        assertEquals(Collections.singletonList("classes2.dex"), result.copied);
+        assertArrayEquals(changed, read(new File(dir, "classes2.dex")));
+
+        // The rewritten manifest describes the new APK
+        assertTrue(stage().reused);
+    }
+
+    @Test
+    public void touchedApkKeepsStagedFiles() throws IOException {
+        writeApk(TestZips.data(2, 20000));
+        stage();
+        assertTrue(apk.setLastModified(apk.lastModified() + 5000));
+
+        DexStagingCache.Result result = stage();
+        assertFalse(result.reused);
+        assertTrue(result.copied.isEmpty());
+        assertTrue(stage().reused);
+    }
+
+    @Test
+    public void damagedStagedFileIsCopiedAgain() throws IOException {
+        writeApk(TestZips.data(2, 20000));
+        stage();
+        File staged = new File(dir, "classes3.dex");
+        assertTrue(staged.setWritable(true));
+        try (RandomAccessFile raf = new RandomAccessFile(staged, "rw")) {
+            raf.setLength(10);
+        }
+
+        DexStagingCache.Result result = stage();
+        assertFalse(result.reused);
+        assertEquals(Collections.singletonList("classes3.dex"), result.copied);
+        assertArrayEquals(TestZips.data(3, 30000), read(staged));
+    }
+
+    @Test
+    public void pruneKeepsManifestEntries() throws IOException {
+        writeApk(TestZips.data(2, 20000));
+        stage();
+        TestZips.write(new File(dir, "classes9.dex"), new byte[1]);
+        TestZips.write(new File(dir, "launcher.dex"), new byte[1]);
+
+        assertEquals(Collections.singletonList("classes9.dex"), cache.prune("launcher.dex"));
+        assertTrue(new File(dir, "launcher.dex").isFile());
+        assertTrue(stage().reused);
+    }
+
+    private void writeApk(byte[] classes2) throws IOException {
+        TestZips.apk()
+            .deflated("AndroidManifest.xml", TestZips.data(0, 500))
+            .deflated("classes.dex", TestZips.data(1, 10000))
+            .deflated("classes2.dex", classes2)
+            .stored("classes3.dex", TestZips.data(3, 30000))
+            .write(apk);
+    }
+
+    private DexStagingCache.Result stage() throws IOException {
+        try (ApkIndex index = ApkIndex.open(apk)) {
+            return cache.stage(index);
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.origin.launcher;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plain-socket HTTP/1.1 server on 127.0.0.1 that serves one in-memory file at
+ * {@code /file.apk} with an ETag, honouring single {@code bytes=a-b} Range
+ * requests and If-Range the way the APK CDN does. One request per connection.
+ */
+final class LocalRangeServer implements Closeable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final ServerSocket socket;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rangedRequestsLeft = new AtomicInteger(Integer.MAX_VALUE);
+    private final AtomicLong bodyBytes = new AtomicLong();
+    private final AtomicLong corruptAt = new AtomicLong(-1);
+    private volatile byte[] content;
+    private volatile String etag;
+    private int version;
+
+    LocalRangeServer(byte[] content) throws IOException {
+        setContent(content);
+        socket = new ServerSocket(0, 64, InetAddress.getLoopbackAddress());
+        Thread accept = new Thread(this::acceptLoop, "local-range-server");
+        accept.setDaemon(true);
+        accept.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + socket.getLocalPort() + "/file.apk";
+    }
+
+    /** Replaces the file, as a re-uploaded build would; the ETag changes with it. */
+    synchronized void setContent(byte[] content) {
+        this.content = content;
+        this.etag = "\"v" + (++version) + "-" + content.length + "\"";
+    }
+
+    String etag() {
+        return etag;
+    }
+
+    /** Honours Range for the next {@code count} requests only, then answers every request with the whole file. */
+    void honourRanges(int count) {
+        rangedRequestsLeft.set(count);
+    }
+
+    /** Flips the byte at {@code offset} in the next Range response that covers it, as a bad mirror would. */
+    void corruptNextRangeAt(long offset) {
+        corruptAt.set(offset);
+    }
+
+    int requestCount() {
+        return requests.get();
+    }
+
+    /** Body bytes written to clients so far. */
+    long bodyBytes() {
+        return bodyBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void acceptLoop() {
+        while (!socket.isClosed()) {
+            final Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread t = new Thread(() -> serve(client), "local-range-server-conn");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket s = client) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), ASCII));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+            }
+            requests.incrementAndGet();
+            respond(s.getOutputStream(), requestLine, headers);
+        } catch (IOException e) {
+            // The client hung up early, e.g. after reading only the headers of a probe
+        }
+    }
+
+    private void respond(OutputStream out, String requestLine, Map<String, String> headers) throws IOException {
+        byte[] body;
+        String currentEtag;
+        synchronized (this) {
+            body = content;
+            currentEtag = etag;
+        }
+        if (!requestLine.startsWith("GET /file.apk ")) {
+            writeHead(out, "404 Not Found", 0, null, currentEtag, false);
+            return;
+        }
+        String range = headers.get("range");
+        String ifRange = headers.get("if-range");
+        boolean ranged = range != null && (ifRange == null || ifRange.equals(currentEtag))
+            && rangedRequestsLeft.getAndDecrement() > 0;
+        if (!ranged) {
+            writeHead(out, "200 OK", body.length, null, currentEtag, false);
+            writeBody(out, body, 0, body.length);
+            return;
+        }
+        Matcher m = RANGE.matcher(range);
+        if (!m.matches()) {
+            writeHead(out, "416 Range Not Satisfiable", 0, "bytes */" + body.length, currentEtag, true);
+            return;
+        }
+        long from = Long.parseLong(m.group(1));
+        long to = m.group(2).isEmpty() ? body.length - 1 : Math.min(Long.parseLong(m.group(2)), body.length - 1);
+        if (from > to) {
+            writeHead(out, "416 Range Not Satisfiable", 0, "bytes */" + body.length, currentEtag, true);
+            return;
+        }
+        int length = (int) (to - from + 1);
+        long corrupt = corruptAt.get();
+        if (corrupt >= from && corrupt <= to && corruptAt.compareAndSet(corrupt, -1)) {
+            body = body.clone();
+            body[(int) corrupt] ^= 0x42;
+        }
+        writeHead(out, "206 Partial Content", length, "bytes " + from + "-" + to + "/" + body.length, currentEtag, true);
+        writeBody(out, body, (int) from, length);
+    }
+
+    private static void writeHead(OutputStream out, String status, long length, String contentRange, String etag,
+                                  boolean ranges) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n")
+            .append("Content-Type: application/vnd.android.package-archive\r\n")
+            .append("Content-Length: ").append(length).append("\r\n")
+            .append("ETag: ").append(etag).append("\r\n")
+            .append("Connection: close\r\n");
+        if (ranges) {
+            head.append("Accept-Ranges: bytes\r\n");
+        }
+        if (contentRange != null) {
+            head.append("Content-Range: ").append(contentRange).append("\r\n");
+        }
+        out.write(head.append("\r\n").toString().getBytes(ASCII));
+        out.flush();
+    }
+
+    private void writeBody(OutputStream out, byte[] body, int from, int length) throws IOException {
+        int end = from + length;
+        for (int pos = from; pos < end; ) {
+            int n = Math.min(65536, end - pos);
+            out.write(body, pos, n);
+            bodyBytes.addAndGet(n);
+            pos += n;
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,82 @@
+package com.origin.launcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class StagingManifestTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void roundTripsHeaderAndEntriesInOrder() throws IOException {
+        File apk = tmp.newFile("base.apk");
+        TestZips.write(apk, TestZips.data(1, 1000));
+        StagingManifest manifest = new StagingManifest();
+        manifest.setApkIdentity(apk);
+        manifest.entries.put("classes3.dex", new StagingManifest.Entry(0xfedcba98L, 300));
+        manifest.entries.put("classes2.dex", new StagingManifest.Entry(2, 200));
+        manifest.entries.put("classes.dex", new StagingManifest.Entry(1, 100));
+        File file = new File(tmp.getRoot(), "dex.manifest");
+        manifest.write(file);
+
+        StagingManifest read = StagingManifest.read(file);
+        assertNotNull(read);
+        assertEquals(manifest.header, read.header);
+        assertEquals(new ArrayList<>(manifest.entries.keySet()), new ArrayList<>(read.entries.keySet()));
+        assertEquals(new StagingManifest.Entry(0xfedcba98L, 300), read.entries.get("classes3.dex"));
+        assertTrue(read.matchesApkIdentity(apk));
+        assertFalse(new File(tmp.getRoot(), "dex.manifest.tmp").exists());
+    }
+
+    @Test
+    public void identityFollowsSizeAndMtime() throws IOException {
+        File apk = tmp.newFile("base.apk");
+        TestZips.write(apk, TestZips.data(1, 1000));
+        StagingManifest manifest = new StagingManifest();
+        manifest.setApkIdentity(apk);
+
+        assertTrue(apk.setLastModified(apk.lastModified() - 10000));
+        assertFalse(manifest.matchesApkIdentity(apk));
+
+        manifest.setApkIdentity(apk);
+        TestZips.write(apk, TestZips.data(1, 1001));
+        assertTrue(apk.setLastModified(Long.parseLong(manifest.header.get("mtime"))));
+        assertFalse(manifest.matchesApkIdentity(apk));
+    }
+
+    @Test
+    public void rejectsMissingForeignOrDamagedFiles() throws IOException {
+        assertNull(StagingManifest.read(new File(tmp.getRoot(), "missing")));
+
+        File file = tmp.newFile("dex.manifest");
+        TestZips.write(file, "#version=999\nclasses.dex=1:100\n".getBytes("UTF-8"));
+        assertNull(StagingManifest.read(file));
+
+        TestZips.write(file, "classes.dex=1:100\n".getBytes("UTF-8"));
+        assertNull(StagingManifest.read(file));
+
+        TestZips.write(file, "#version=1\nclasses.dex=garbage\n".getBytes("UTF-8"));
+        assertNull(StagingManifest.read(file));
+    }
+
+    @Test
+    public void filesPresentChecksRecordedSizes() throws IOException {
+        File dir = tmp.newFolder("staged");
+        StagingManifest manifest = new StagingManifest();
+        manifest.entries.put("classes.dex", new StagingManifest.Entry(1, 10));
+        assertFalse(manifest.filesPresent(dir));
+
+        TestZips.write(new File(dir, "classes.dex"), new byte[9]);
+        assertFalse(manifest.filesPresent(dir));
+
+        TestZips.write(new File(dir, "classes.dex"), new byte[10]);
+        assertTrue(manifest.filesPresent(dir));
+    }
+}
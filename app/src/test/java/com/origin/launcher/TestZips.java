@@ -0,0 +1,179 @@
+package com.origin.launcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Builds small APK-shaped ZIP files for the tests. */
+final class TestZips {
+    private static final int STORED = Integer.MIN_VALUE;
+    private static final int EOCD_SIZE = 22;
+    private static final int LOC_HEADER_SIZE = 30;
+
+    private TestZips() {
+    }
+
+    /** Deterministic bytes; the first {@code compressible} of them repeat so they deflate well. */
+    static byte[] data(long seed, int size, int compressible) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        for (int i = 0; i < compressible && i < size; i++) {
+            b[i] = (byte) ('a' + i % 7);
+        }
+        return b;
+    }
+
+    static byte[] data(long seed, int size) {
+        return data(seed, size, size / 2);
+    }
+
+    /** Entries are written in the order they are added. */
+    static final class Builder {
+        private final Map<String, byte[]> contents = new LinkedHashMap<>();
+        private final Map<String, Integer> levels = new LinkedHashMap<>();
+        private final Map<String, byte[]> extras = new LinkedHashMap<>();
+        private String comment;
+        private int signingBlockSize;
+        private int alignment;
+
+        Builder stored(String name, byte[] data) {
+            contents.put(name, data);
+            levels.put(name, STORED);
+            return this;
+        }
+
+        Builder deflated(String name, byte[] data) {
+            return deflated(name, data, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        Builder deflated(String name, byte[] data, int level) {
+            contents.put(name, data);
+            levels.put(name, level);
+            return this;
+        }
+
+        Builder extra(String name, byte[] extra) {
+            extras.put(name, extra);
+            return this;
+        }
+
+        /** Pads the local headers of STORED entries so their data starts on an {@code alignment} boundary. */
+        Builder align(int alignment) {
+            this.alignment = alignment;
+            return this;
+        }
+
+        Builder comment(String comment) {
+            this.comment = comment;
+            return this;
+        }
+
+        /** Inserts an APK Signing Block with {@code size} bytes of payload before the central directory. */
+        Builder signingBlock(int size) {
+            signingBlockSize = size;
+            return this;
+        }
+
+        byte[] build() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+                if (comment != null) {
+                    zip.setComment(comment);
+                }
+                for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+                    byte[] data = e.getValue();
+                    ZipEntry entry = new ZipEntry(e.getKey());
+                    int level = levels.get(e.getKey());
+                    if (level == STORED) {
+                        CRC32 crc = new CRC32();
+                        crc.update(data);
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(data.length);
+                        entry.setCompressedSize(data.length);
+                        entry.setCrc(crc.getValue());
+                    } else {
+                        zip.setLevel(level);
+                    }
+                    if (extras.containsKey(e.getKey())) {
+                        entry.setExtra(extras.get(e.getKey()));
+                    } else if (level == STORED && alignment > 0) {
+                        entry.setExtra(alignmentExtra(bytes.size(), e.getKey(), alignment));
+                    }
+                    zip.putNextEntry(entry);
+                    zip.write(data);
+                    zip.closeEntry();
+                }
+            }
+            byte[] zip = bytes.toByteArray();
+            return signingBlockSize > 0 ? insertSigningBlock(zip, signingBlockSize) : zip;
+        }
+
+        File write(File file) throws IOException {
+            TestZips.write(file, build());
+            return file;
+        }
+    }
+
+    /** An extra field that ends a local header written at {@code offset} on an {@code alignment} boundary. */
+    private static byte[] alignmentExtra(long offset, String name, int alignment) {
+        long dataStart = offset + LOC_HEADER_SIZE + name.getBytes(Charset.forName("UTF-8")).length + 4;
+        int padding = (int) ((alignment - dataStart % alignment) % alignment);
+        ByteBuffer extra = ByteBuffer.allocate(4 + padding).order(ByteOrder.LITTLE_ENDIAN);
+        // The header ID zipalign uses for its padding
+        extra.putShort((short) 0xd935);
+        extra.putShort((short) padding);
+        return extra.array();
+    }
+
+    static Builder apk() {
+        return new Builder();
+    }
+
+    static void write(File file, byte[] bytes) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+
+    /** Offset of the end of central directory record: the last signature that leaves room for one. */
+    static int eocdOffset(byte[] zip) {
+        for (int i = zip.length - EOCD_SIZE; i >= 0; i--) {
+            if (zip[i] == 0x50 && zip[i + 1] == 0x4b && zip[i + 2] == 0x05 && zip[i + 3] == 0x06) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No EOCD");
+    }
+
+    private static byte[] insertSigningBlock(byte[] zip, int payload) {
+        ByteBuffer in = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = eocdOffset(zip);
+        int cd = in.getInt(eocd + 16);
+        // size, payload, size again, magic
+        int blockSize = 8 + payload + 8 + 16;
+        ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+        long sizeField = blockSize - 8;
+        block.putLong(sizeField);
+        block.put(data(payload, payload, 0));
+        block.putLong(sizeField);
+        block.put("APK Sig Block 42".getBytes(Charset.forName("US-ASCII")));
+        byte[] out = new byte[zip.length + blockSize];
+        System.arraycopy(zip, 0, out, 0, cd);
+        System.arraycopy(block.array(), 0, out, cd, blockSize);
+        System.arraycopy(zip, cd, out, cd + blockSize, zip.length - cd);
+        ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN).putInt(eocd + blockSize + 16, cd + blockSize);
+        return out;
+    }
+}
@@ -0,0 +1,116 @@
+package com.origin.launcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransferRateTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void unknownUntilTwoSamples() {
+        TransferRate rate = new TransferRate();
+        assertEquals(-1, rate.bytesPerSecond());
+        rate.update(1000, 0);
+        assertEquals(-1, rate.bytesPerSecond());
+        rate.update(2000, 1000 * MS);
+        assertEquals(1000, rate.bytesPerSecond());
+    }
+
+    @Test
+    public void steadyRateStaysPut() {
+        TransferRate rate = new TransferRate();
+        for (int i = 0; i <= 50; i++) {
+            rate.update(i * 50000L, i * 100 * MS);
+        }
+        assertEquals(500000, rate.bytesPerSecond());
+    }
+
+    @Test
+    public void movesTowardNewSampleByTimeWeight() {
+        TransferRate rate = new TransferRate();
+        rate.update(0, 0);
+        rate.update(100000, 1000 * MS);
+        assertEquals(100000, rate.bytesPerSecond());
+
+        // One second at 400 KB/s moves the average by 1 - e^(-1/3) of the gap
+        rate.update(500000, 2000 * MS);
+        double alpha = 1 - Math.exp(-1000.0 / TransferRate.TIME_CONSTANT_MS);
+        assertEquals((long) (100000 + alpha * 300000), rate.bytesPerSecond());
+    }
+
+    @Test
+    public void irregularSamplingGivesSameAverage() {
+        TransferRate even = new TransferRate();
+        TransferRate uneven = new TransferRate();
+        even.update(0, 0);
+        uneven.update(0, 0);
+        even.update(100000, 1000 * MS);
+        uneven.update(100000, 1000 * MS);
+
+        // Two seconds at 400 KB/s, reported once or in many small steps
+        even.update(900000, 3000 * MS);
+        for (int i = 1; i <= 40; i++) {
+            uneven.update(100000 + i * 20000L, (1000 + i * 50) * MS);
+        }
+        assertEquals(even.bytesPerSecond(), uneven.bytesPerSecond(), 2);
+    }
+
+    @Test
+    public void oldSpeedFadesOut() {
+        TransferRate rate = new TransferRate();
+        rate.update(0, 0);
+        rate.update(10000000, 1000 * MS);
+        long bytes = 10000000;
+        for (int i = 2; i <= 31; i++) {
+            bytes += 100000;
+            rate.update(bytes, i * 1000 * MS);
+        }
+        // Thirty seconds is ten time constants
+        assertEquals(100000, rate.bytesPerSecond(), 500);
+    }
+
+    @Test
+    public void ignoresSamplesWithoutElapsedTime() {
+        TransferRate rate = new TransferRate();
+        rate.update(0, 0);
+        rate.update(1000, 1000 * MS);
+        rate.update(900000, 1000 * MS);
+        assertEquals(1000, rate.bytesPerSecond());
+    }
+
+    @Test
+    public void smallerCountRestarts() {
+        TransferRate rate = new TransferRate();
+        rate.update(0, 0);
+        rate.update(1000000, 1000 * MS);
+        assertEquals(1000000, rate.bytesPerSecond());
+
+        rate.update(0, 2000 * MS);
+        assertEquals(-1, rate.bytesPerSecond());
+        rate.update(10000, 3000 * MS);
+        assertEquals(10000, rate.bytesPerSecond());
+    }
+
+    @Test
+    public void etaRoundsUp() {
+        assertEquals(0, TransferRate.etaSeconds(0, 100));
+        assertEquals(1, TransferRate.etaSeconds(1, 100));
+        assertEquals(1, TransferRate.etaSeconds(100, 100));
+        assertEquals(2, TransferRate.etaSeconds(101, 100));
+        assertEquals(-1, TransferRate.etaSeconds(100, 0));
+        assertEquals(-1, TransferRate.etaSeconds(100, -1));
+        assertEquals(-1, TransferRate.etaSeconds(-1, 100));
+    }
+
+    @Test
+    public void bufferCoversFiftyMillisecondsWithinBounds() {
+        assertEquals(TransferRate.MIN_BUFFER_SIZE, TransferRate.bufferSizeFor(-1));
+        assertEquals(TransferRate.MIN_BUFFER_SIZE, TransferRate.bufferSizeFor(0));
+        assertEquals(TransferRate.MIN_BUFFER_SIZE, TransferRate.bufferSizeFor(100000));
+        // 50 ms of 2 MB/s is 100 KB
+        assertEquals(128 * 1024, TransferRate.bufferSizeFor(2000000));
+        assertEquals(64 * 1024, TransferRate.bufferSizeFor(64 * 1024 * 20));
+        assertEquals(TransferRate.MAX_BUFFER_SIZE, TransferRate.bufferSizeFor(1L << 40));
+    }
+}
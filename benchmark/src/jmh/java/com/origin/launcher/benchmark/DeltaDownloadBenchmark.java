@@ -0,0 +1,149 @@
+package com.origin.launcher.benchmark;
+
+import com.origin.launcher.ApkDownloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Downloads version 2 of an APK-shaped file from {@link LocalRangeServer},
+ * whole and as a delta against version 1 on disk. The versions share their
+ * native library and most resource packs; the dex files and two packs
+ * change, as they do between Minecraft releases.
+ *
+ * Run with {@code ./gradlew :benchmark:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeltaDownloadBenchmark {
+
+    @Param({"false", "true"})
+    public boolean delta;
+
+    /** Per-connection cap in MB/s; 0 serves at loopback speed. */
+    @Param({"8", "0"})
+    public int mbPerSecondPerConnection;
+
+    private File workDir;
+    private File previous;
+    private LocalRangeServer server;
+    private OkHttpClient client;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        workDir = SyntheticApk.tempDir("delta-bench");
+        previous = new File(workDir, "1.apk");
+        Files.write(previous.toPath(), version(1));
+        server = new LocalRangeServer(version(2), true, mbPerSecondPerConnection * 1024L * 1024);
+        client = new OkHttpClient.Builder().protocols(Collections.singletonList(Protocol.HTTP_1_1)).build();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearDownload() {
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.equals(previous)) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.close();
+        SyntheticApk.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        File out = new File(workDir, "2.apk");
+        ApkDownloader downloader = new ApkDownloader(ApkDownloader.DEFAULT_CONNECTIONS, null, client);
+        if (delta) {
+            downloader.setDeltaBases(Collections.singletonList(previous));
+        }
+        downloader.download(server.url(), out, new ApkDownloader.ProgressListener() {
+            @Override
+            public void onStart(long total, String etag) {
+            }
+
+            @Override
+            public void onProgress(long downloaded, long bytesPerSecond) {
+            }
+        });
+        return downloader.getReusedBytes();
+    }
+
+    /** About 40 MB compressed: two 6 MB dex files, 2000 small assets, eight 4 MB packs and a 16 MB STORED library. */
+    private static byte[] version(int version) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            deflated(zip, "classes.dex", content(version * 100 + 1, 6 << 20));
+            deflated(zip, "classes2.dex", content(version * 100 + 2, 6 << 20));
+            for (int i = 0; i < 2000; i++) {
+                deflated(zip, "assets/resource_packs/vanilla/textures/blocks/block_" + i + ".png", content(i, 512));
+            }
+            for (int i = 0; i < 8; i++) {
+                int seed = i < 2 ? version * 1000 + i : 1000 + i;
+                deflated(zip, "assets/resource_packs/pack_" + i + ".zip", content(seed, 4 << 20));
+            }
+            stored(zip, "lib/" + SyntheticApk.ABI + "/libminecraftpe.so", content(42, 16 << 20));
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Half-entropy bytes, as in {@link SyntheticApk}. */
+    private static byte[] content(int seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        for (int i = 0; i < size; i++) {
+            data[i] &= 0x0f;
+        }
+        return data;
+    }
+
+    private static void deflated(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static void stored(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,141 @@
+package com.origin.launcher.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the APK CDN on 127.0.0.1: serves one in-memory file at
+ * {@code /file.apk} with an ETag, honours single {@code bytes=a-b} Range
+ * requests (and If-Range) unless told not to, and can cap every connection at
+ * a fixed rate the way a CDN edge caps one TCP stream. {@code /redirect/N}
+ * reaches the file through N redirects, like the mirror links do.
+ */
+final class LocalRangeServer implements Closeable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private volatile byte[] content;
+    private volatile String etag;
+    private final boolean rangeSupported;
+    private final long bytesPerSecond;
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "local-range-server");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** {@code bytesPerSecond <= 0} serves at full speed. */
+    LocalRangeServer(byte[] content, boolean rangeSupported, long bytesPerSecond) throws IOException {
+        setContent(content);
+        this.rangeSupported = rangeSupported;
+        this.bytesPerSecond = bytesPerSecond;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        server.createContext("/file.apk", this::handle);
+        server.createContext("/redirect/", this::redirect);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/file.apk";
+    }
+
+    /** A URL that redirects {@code hops} times before reaching the file. */
+    String redirectUrl(int hops) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/redirect/" + hops;
+    }
+
+    /** Replaces the file, as a re-uploaded build would; the ETag changes with it. */
+    void setContent(byte[] content) {
+        this.content = content;
+        this.etag = "\"" + Integer.toHexString(System.identityHashCode(content)) + "-" + content.length + "\"";
+    }
+
+    /** Requests served so far, redirects included. */
+    int requestCount() {
+        return requests.get();
+    }
+
+    private void redirect(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int hops = Integer.parseInt(exchange.getRequestURI().getPath().substring("/redirect/".length()));
+        exchange.getResponseHeaders().set("Location", hops > 1 ? "/redirect/" + (hops - 1) : "/file.apk");
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        byte[] content = this.content;
+        String etag = this.etag;
+        try {
+            long from = 0;
+            long to = content.length - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            Matcher m = range != null ? RANGE.matcher(range) : null;
+            // A stale If-Range gets the whole current file
+            if (rangeSupported && m != null && m.matches() && (ifRange == null || ifRange.equals(etag))) {
+                from = Long.parseLong(m.group(1));
+                if (!m.group(2).isEmpty()) {
+                    to = Math.min(to, Long.parseLong(m.group(2)));
+                }
+                if (from > to) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+            }
+            if (rangeSupported) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/vnd.android.package-archive");
+            exchange.getResponseHeaders().set("ETag", etag);
+            long length = to - from + 1;
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                int chunk = 16384;
+                long start = System.nanoTime();
+                for (long sent = 0; sent < length; ) {
+                    int n = (int) Math.min(chunk, length - sent);
+                    out.write(content, (int) (from + sent), n);
+                    sent += n;
+                    if (bytesPerSecond > 0) {
+                        long due = start + sent * 1_000_000_000L / bytesPerSecond;
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client hung up mid-body, as cancelled segments do
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,91 @@
+package com.origin.launcher.benchmark;
+
+import com.origin.launcher.ApkDownloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Downloads a file from {@link LocalRangeServer} with one connection and with
+ * several Range segments, against a server whose connections are each capped
+ * (like one TCP stream through a CDN edge) and one that ignores Range, where
+ * the segmented mode has to fall back to a single stream.
+ *
+ * Run with {@code ./gradlew :benchmark:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SegmentedDownloadBenchmark {
+
+    @Param({"1", "4"})
+    public int connections;
+
+    @Param({"true", "false"})
+    public boolean rangeSupported;
+
+    @Param({"64"})
+    public int sizeMb;
+
+    /** Per-connection cap in MB/s; 0 serves at loopback speed. */
+    @Param({"16"})
+    public int mbPerSecondPerConnection;
+
+    private File workDir;
+    private LocalRangeServer server;
+    private OkHttpClient client;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        byte[] content = new byte[sizeMb * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        server = new LocalRangeServer(content, rangeSupported, mbPerSecondPerConnection * 1024L * 1024);
+        workDir = SyntheticApk.tempDir("download-bench");
+        // Like LauncherHttpClient.downloadClient(): one connection per segment
+        client = new OkHttpClient.Builder().protocols(Collections.singletonList(Protocol.HTTP_1_1)).build();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearDownload() {
+        SyntheticApk.deleteRecursively(workDir);
+        workDir.mkdirs();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.close();
+        SyntheticApk.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        File out = new File(workDir, "file.apk");
+        new ApkDownloader(connections, null, client).download(server.url(), out, new ApkDownloader.ProgressListener() {
+            @Override
+            public void onStart(long total, String etag) {
+            }
+
+            @Override
+            public void onProgress(long downloaded, long bytesPerSecond) {
+            }
+        });
+        return out.length();
+    }
+}
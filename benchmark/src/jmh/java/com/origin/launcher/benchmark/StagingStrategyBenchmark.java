@@ -0,0 +1,142 @@
+package com.origin.launcher.benchmark;
+
+import com.origin.launcher.ApkIndex;
+import com.origin.launcher.ApkStager;
+import com.origin.launcher.DexStagingCache;
+import com.origin.launcher.NativeLibExtractor;
+import com.origin.launcher.StagingEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages a synthetic Minecraft-shaped APK the way a launch does, once per
+ * strategy:
+ * <ul>
+ *   <li>{@code sequential}: dex files then libraries, one entry at a time</li>
+ *   <li>{@code parallel}: dex files and libraries together on the staging pool, always extracting</li>
+ *   <li>{@code inPlace}: ApkStager with in-APK loading, so aligned STORED libraries are not copied</li>
+ *   <li>{@code warm}: a second launch of an already staged APK (manifest checks only)</li>
+ * </ul>
+ * across STORED and DEFLATED libraries and single versus split APKs.
+ * Allocation is reported by the gc profiler (gc.alloc.rate.norm is bytes per
+ * staging run).
+ *
+ * Run with {@code ./gradlew :benchmark:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StagingStrategyBenchmark {
+
+    @Param({"sequential", "parallel", "inPlace", "warm"})
+    public String strategy;
+
+    @Param({"STORED", "DEFLATED"})
+    public String libMethod;
+
+    @Param({"false", "true"})
+    public boolean split;
+
+    @Param({"12"})
+    public int dexCount;
+
+    @Param({"2048"})
+    public int dexKb;
+
+    /** Sizes of the libraries, largest first like libminecraftpe.so and its companions. */
+    @Param({"49152,8192,4096,2048,1024"})
+    public String libKb;
+
+    @Param({"4000"})
+    public int assets;
+
+    private File workDir;
+    private File apk;
+    private File libsApk;
+    private File stagingRoot;
+    private StagingEngine engine;
+
+    @Setup(Level.Trial)
+    public void createApks() throws IOException {
+        workDir = SyntheticApk.tempDir("staging-bench");
+        String[] parts = libKb.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+        libsApk = SyntheticApk.create(workDir, dexCount, dexKb, sizes, "STORED".equals(libMethod), assets, split);
+        apk = new File(workDir, "base.apk");
+        stagingRoot = new File(workDir, "staging");
+        engine = new StagingEngine(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareStagingDir() throws IOException {
+        SyntheticApk.deleteRecursively(stagingRoot);
+        if ("warm".equals(strategy)) {
+            stageWithStager();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteApks() {
+        SyntheticApk.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public Object stage() throws IOException {
+        switch (strategy) {
+            case "sequential":
+                return stageSequentially();
+            case "parallel":
+                return stageInParallel();
+            default:
+                return stageWithStager();
+        }
+    }
+
+    private Object stageSequentially() throws IOException {
+        try (ApkIndex apkIndex = ApkIndex.open(apk);
+             ApkIndex libsIndex = libsApk.equals(apk) ? null : ApkIndex.open(libsApk)) {
+            File dir = new File(stagingRoot, "sequential");
+            DexStagingCache.Result dex = new DexStagingCache(new File(dir, "dex")).stage(apkIndex);
+            new NativeLibExtractor(new File(dir, "lib")).extract(libsIndex != null ? libsIndex : apkIndex, SyntheticApk.ABI);
+            return dex;
+        }
+    }
+
+    private Object stageInParallel() throws IOException {
+        try (ApkIndex apkIndex = ApkIndex.open(apk);
+             ApkIndex libsIndex = libsApk.equals(apk) ? null : ApkIndex.open(libsApk)) {
+            // What ApkStager does when the libraries cannot be loaded from the APK
+            File dir = new File(stagingRoot, "parallel");
+            DexStagingCache.Plan dexPlan = new DexStagingCache(new File(dir, "dex")).plan(apkIndex);
+            NativeLibExtractor.Plan libsPlan = new NativeLibExtractor(new File(dir, "lib"))
+                .plan(libsIndex != null ? libsIndex : apkIndex, SyntheticApk.ABI);
+            engine.run(Arrays.asList(dexPlan, libsPlan), null);
+            return dexPlan.getResult();
+        }
+    }
+
+    private Object stageWithStager() throws IOException {
+        try (ApkIndex apkIndex = ApkIndex.open(apk);
+             ApkIndex libsIndex = libsApk.equals(apk) ? null : ApkIndex.open(libsApk)) {
+            ApkStager stager = new ApkStager(stagingRoot, SyntheticApk.ABI, engine);
+            return stager.stage(apkIndex, libsIndex != null ? libsIndex : apkIndex, true, null);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.origin.launcher.benchmark;
+
+import com.origin.launcher.ApkEntryCopier;
+import com.origin.launcher.ApkIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Copies every STORED native library out of a synthetic multi-hundred-MB APK,
+ * once through FileChannel.transferTo and once through the heap-buffered
+ * streaming path that DEFLATED entries use.
+ *
+ * Run with {@code ./gradlew :benchmark:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StoredEntryCopyBenchmark {
+
+    @Param({"384"})
+    public int apkSizeMb;
+
+    private File workDir;
+    private ApkIndex index;
+    private List<ApkIndex.Entry> libs;
+
+    @Setup(Level.Trial)
+    public void createApk() throws IOException {
+        workDir = File.createTempFile("stored-bench", "");
+        workDir.delete();
+        workDir.mkdirs();
+        File apk = new File(workDir, "synthetic.apk");
+
+        // One large library like libminecraftpe.so plus a handful of smaller ones
+        long total = apkSizeMb * 1024L * 1024L;
+        long[] sizes = {total * 3 / 4, total / 8, total / 16, total / 32, total / 32};
+        Random random = new Random(42);
+        byte[] chunk = new byte[1 << 20];
+        random.nextBytes(chunk);
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(apk), 1 << 20))) {
+            for (int i = 0; i < sizes.length; i++) {
+                ZipEntry entry = new ZipEntry("lib/arm64-v8a/lib" + i + ".so");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(sizes[i]);
+                entry.setCompressedSize(sizes[i]);
+                entry.setCrc(crcOf(chunk, sizes[i]));
+                zip.putNextEntry(entry);
+                writeRepeated(zip, chunk, sizes[i]);
+                zip.closeEntry();
+            }
+        }
+        index = ApkIndex.open(apk);
+        libs = index.nativeLibraries("arm64-v8a");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteApk() throws IOException {
+        index.close();
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        workDir.delete();
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        long total = 0;
+        for (ApkIndex.Entry entry : libs) {
+            File out = new File(workDir, entry.simpleName());
+            total += ApkEntryCopier.transfer(index, entry, out);
+            out.delete();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long streamed() throws IOException {
+        long total = 0;
+        for (ApkIndex.Entry entry : libs) {
+            File out = new File(workDir, entry.simpleName());
+            total += ApkEntryCopier.stream(index, entry, out, null);
+            out.delete();
+        }
+        return total;
+    }
+
+    private static long crcOf(byte[] chunk, long size) {
+        CRC32 crc = new CRC32();
+        for (long done = 0; done < size; ) {
+            int n = (int) Math.min(chunk.length, size - done);
+            crc.update(chunk, 0, n);
+            done += n;
+        }
+        return crc.getValue();
+    }
+
+    private static void writeRepeated(ZipOutputStream zip, byte[] chunk, long size) throws IOException {
+        for (long done = 0; done < size; ) {
+            int n = (int) Math.min(chunk.length, size - done);
+            zip.write(chunk, 0, n);
+            done += n;
+        }
+    }
+}
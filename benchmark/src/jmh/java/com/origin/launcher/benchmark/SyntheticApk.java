@@ -0,0 +1,162 @@
+package com.origin.launcher.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes APK-shaped ZIP files for benchmarks: DEFLATED dex files with roughly
+ * the compressibility of real ones, native libraries that are either DEFLATED
+ * or STORED and 4 KB aligned the way zipalign leaves them, and a crowd of
+ * small asset entries so the central directory is as large as Minecraft's.
+ */
+final class SyntheticApk implements Closeable {
+    static final String ABI = "arm64-v8a";
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int ALIGNMENT_EXTRA_ID = 0xd935;
+
+    private final Random random = new Random(42);
+    private final CountingOutputStream counter;
+    private final ZipOutputStream zip;
+
+    private SyntheticApk(File file) throws IOException {
+        counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+        zip = new ZipOutputStream(counter);
+    }
+
+    /**
+     * Writes a base APK and, when {@code split}, a separate
+     * split_config.arm64_v8a.apk holding the libraries. Returns the APK that
+     * holds the libraries.
+     */
+    static File create(File dir, int dexCount, int dexKb, int[] libKb, boolean storedLibs, int assets, boolean split)
+            throws IOException {
+        File base = new File(dir, "base.apk");
+        File libsApk = split ? new File(dir, "split_config." + ABI.replace('-', '_') + ".apk") : base;
+        try (SyntheticApk apk = new SyntheticApk(base)) {
+            for (int i = 1; i <= dexCount; i++) {
+                apk.deflated(i == 1 ? "classes.dex" : "classes" + i + ".dex", dexKb * 1024);
+            }
+            for (int i = 0; i < assets; i++) {
+                apk.deflated("assets/resource_packs/vanilla/textures/blocks/block_" + i + ".png", 512);
+            }
+            if (!split) {
+                apk.libraries(libKb, storedLibs);
+            }
+        }
+        if (split) {
+            try (SyntheticApk apk = new SyntheticApk(libsApk)) {
+                apk.libraries(libKb, storedLibs);
+            }
+        }
+        return libsApk;
+    }
+
+    private void libraries(int[] libKb, boolean stored) throws IOException {
+        for (int i = 0; i < libKb.length; i++) {
+            String name = "lib/" + ABI + "/lib" + (i == 0 ? "minecraftpe" : "synthetic" + i) + ".so";
+            if (stored) {
+                storedAligned(name, libKb[i] * 1024);
+            } else {
+                deflated(name, libKb[i] * 1024);
+            }
+        }
+    }
+
+    /** Half-entropy bytes: compress to about half, like dex and .so files do. */
+    private byte[] content(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        for (int i = 0; i < size; i++) {
+            data[i] &= 0x0f;
+        }
+        return data;
+    }
+
+    private void deflated(String name, int size) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        zip.putNextEntry(entry);
+        zip.write(content(size));
+        zip.closeEntry();
+    }
+
+    private void storedAligned(String name, int size) throws IOException {
+        byte[] data = content(size);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc.getValue());
+
+        // Pad the extra field so the data starts on a page boundary, as zipalign -p does
+        long headerEnd = counter.count + 30 + name.getBytes(StandardCharsets.UTF_8).length + 6;
+        int padding = (int) ((PAGE_SIZE - headerEnd % PAGE_SIZE) % PAGE_SIZE);
+        byte[] extra = new byte[6 + padding];
+        extra[0] = (byte) ALIGNMENT_EXTRA_ID;
+        extra[1] = (byte) (ALIGNMENT_EXTRA_ID >> 8);
+        extra[2] = (byte) (2 + padding);
+        extra[3] = (byte) ((2 + padding) >> 8);
+        extra[4] = (byte) PAGE_SIZE;
+        extra[5] = (byte) (PAGE_SIZE >> 8);
+        entry.setExtra(extra);
+
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    static File tempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}